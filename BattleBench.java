@@ -0,0 +1,331 @@
+import java.io.*;
+import java.lang.management.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Load test for PokeBattleApp's "bench" mode: a BattleServer on loopback (one per
+// SO_REUSEPORT shard with --shards=N) and a number of scripted clients, each playing
+// complete battles back to back. The clients either run in this JVM or are split
+// across child JVMs ("bench-client"), which report their turn latencies back over
+// stdout. Prints one JSON object.
+public class BattleBench {
+    private static final long BATTLE_TIMEOUT_MS = 60_000;
+
+    // Shared by every ScriptedPlayer in the process
+    static class LatencyRecorder implements ScriptedPlayer.TurnRecorder {
+        private long[] samples = new long[1 << 16];
+        private int count = 0;
+
+        @Override
+        public synchronized void record(long latencyNanos) {
+            if (count == samples.length) {
+                samples = Arrays.copyOf(samples, count * 2);
+            }
+            samples[count++] = latencyNanos;
+        }
+
+        synchronized long[] snapshot() {
+            return Arrays.copyOf(samples, count);
+        }
+    }
+
+    static class ClientStats {
+        final AtomicLong battles = new AtomicLong();
+        final AtomicLong stalled = new AtomicLong();
+        final AtomicLong retransmits = new AtomicLong();
+    }
+
+    // Each client owns a transport (its own port, so its own session on the server)
+    // and replays battlesPerClient battles over it
+    static void runClients(Map<String, Pokemon> pokemonDB, String teamNames, String moveName, int clients,
+                           int battlesPerClient, int serverPort, boolean secure,
+                           LatencyRecorder recorder, ClientStats stats) throws InterruptedException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        List<Thread> drivers = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            Thread driver = new Thread(() -> {
+                try {
+                    PokeTransportLayer transport = new PokeTransportLayer(0);
+                    transport.setVerbose(false);
+                    if (secure) {
+                        transport.enableSecureMode();
+                    }
+                    List<Thread> threads = BattleSimulation.startTransportThreads(transport);
+                    for (int b = 0; b < battlesPerClient; b++) {
+                        PokeProtocolHandler handler = new PokeProtocolHandler(transport, pokemonDB, false, loopback, serverPort);
+                        handler.setVerbose(false);
+                        ScriptedPlayer player = new ScriptedPlayer(handler, moveName, recorder);
+                        transport.setHandler(player);
+                        handler.startHandshake(teamNames);
+
+                        long deadline = System.currentTimeMillis() + BATTLE_TIMEOUT_MS;
+                        while (!player.isFinished() && !player.isStalled() && System.currentTimeMillis() < deadline) {
+                            LockSupport.parkNanos(100_000);
+                        }
+                        if (!player.isFinished()) {
+                            stats.stalled.incrementAndGet();
+                            break;
+                        }
+                        stats.battles.incrementAndGet();
+                    }
+                    stats.retransmits.addAndGet(transport.getRetransmitCount());
+                    transport.closeSocket();
+                    for (Thread t : threads) {
+                        t.join();
+                    }
+                } catch (Exception e) {
+                    System.err.println("Bench client error: " + e.getMessage());
+                    stats.stalled.incrementAndGet();
+                }
+            });
+            driver.start();
+            drivers.add(driver);
+        }
+        for (Thread driver : drivers) {
+            driver.join();
+        }
+    }
+
+    private static long[] gcTotals() {
+        long count = 0;
+        long timeMs = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            timeMs += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[] { count, timeMs };
+    }
+
+    private static Map<String, long[]> gcByCollector() {
+        Map<String, long[]> out = new LinkedHashMap<>();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            out.put(gc.getName(), new long[] { gc.getCollectionCount(), gc.getCollectionTime() });
+        }
+        return out;
+    }
+
+    private static long percentileMicros(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1_000;
+    }
+
+    // Quoted JSON string; the move and team come straight from the command line
+    static String jsonString(String value) {
+        StringBuilder out = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                out.append('\\').append(ch);
+            } else if (ch < 0x20) {
+                out.append(String.format("\\u%04x", (int) ch));
+            } else {
+                out.append(ch);
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    // A scripted side can only ever attack, so every member has to know the move
+    private static boolean teamKnowsMove(Map<String, Pokemon> pokemonDB, String teamNames, String moveName) {
+        Team team = Team.fromNames(pokemonDB, teamNames);
+        for (int i = 0; i < team.size(); i++) {
+            if (team.get(i).getMove(moveName) == null) {
+                System.err.println("Bench: " + team.get(i).getName() + " does not know " + moveName
+                        + ". Known moves: " + team.get(i).getMoves());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // bench <PokemonName[,PokemonName...]> [clients] [battlesPerClient] [moveName] [processes] [csv] [--secure] [--shards=N]
+    public static void run(Map<String, Pokemon> pokemonDB, String[] args, boolean secure, int shardCount,
+                           String csvFilePath) throws Exception {
+        String teamNames = args[1].toUpperCase();
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int battlesPerClient = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+        String moveName = args.length > 4 ? args[4] : "Tackle";
+        int processes = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+        if (!teamKnowsMove(pokemonDB, teamNames, moveName)) {
+            return;
+        }
+
+        LatencyRecorder recorder = new LatencyRecorder();
+        // One BattleServer per shard; each peer's battle lives on the shard the kernel picked for it
+        List<PokeTransportLayer> shards = PokeTransportLayer.openShards(0, shardCount);
+        List<BattleServer> servers = new ArrayList<>();
+        List<Thread> serverThreads = new ArrayList<>();
+        for (PokeTransportLayer shard : shards) {
+            shard.setVerbose(false);
+            if (secure) {
+                shard.enableSecureMode();
+            }
+            servers.add(new BattleServer(shard, pokemonDB, teamNames, moveName, recorder));
+            serverThreads.addAll(BattleSimulation.startTransportThreads(shard));
+        }
+        int serverPort = shards.get(0).getLocalPort();
+
+        ClientStats stats = new ClientStats();
+        long[] clientGc = new long[2];
+        Map<String, long[]> gcBefore = gcByCollector();
+        long start = System.nanoTime();
+
+        if (processes <= 1) {
+            runClients(pokemonDB, teamNames, moveName, clients, battlesPerClient, serverPort, secure, recorder, stats);
+        } else {
+            runChildProcesses(teamNames, moveName, clients, battlesPerClient, processes, serverPort, secure,
+                    csvFilePath, recorder, stats, clientGc);
+        }
+
+        long elapsedNs = System.nanoTime() - start;
+        Map<String, long[]> gcAfter = gcByCollector();
+        long serverRetransmits = 0;
+        long serverBattlesFinished = 0;
+        StringBuilder battlesPerShard = new StringBuilder();
+        for (int i = 0; i < shards.size(); i++) {
+            serverRetransmits += shards.get(i).getRetransmitCount();
+            serverBattlesFinished += servers.get(i).getBattlesFinished();
+            battlesPerShard.append(i == 0 ? "" : ",").append(servers.get(i).getBattlesFinished());
+            shards.get(i).closeSocket();
+        }
+        for (Thread t : serverThreads) {
+            t.join();
+        }
+
+        long[] latencies = recorder.snapshot();
+        Arrays.sort(latencies);
+        double seconds = elapsedNs / 1e9;
+        Runtime rt = Runtime.getRuntime();
+
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"team\":").append(jsonString(teamNames)).append(',');
+        json.append("\"move\":").append(jsonString(moveName)).append(',');
+        json.append("\"secure\":").append(secure).append(',');
+        json.append("\"clients\":").append(clients).append(',');
+        json.append("\"processes\":").append(Math.max(1, processes)).append(',');
+        json.append("\"battles\":").append(stats.battles.get()).append(',');
+        json.append("\"serverBattlesFinished\":").append(serverBattlesFinished).append(',');
+        json.append("\"shards\":").append(shards.size()).append(',');
+        json.append("\"serverBattlesPerShard\":[").append(battlesPerShard).append("],");
+        json.append("\"stalledClients\":").append(stats.stalled.get()).append(',');
+        json.append("\"turns\":").append(latencies.length).append(',');
+        json.append("\"durationMs\":").append(elapsedNs / 1_000_000).append(',');
+        json.append(String.format(Locale.ROOT, "\"battlesPerSec\":%.1f,", stats.battles.get() / seconds));
+        json.append(String.format(Locale.ROOT, "\"turnsPerSec\":%.1f,", latencies.length / seconds));
+        json.append("\"turnLatencyUs\":{");
+        json.append("\"p50\":").append(percentileMicros(latencies, 0.50)).append(',');
+        json.append("\"p99\":").append(percentileMicros(latencies, 0.99)).append(',');
+        json.append("\"p999\":").append(percentileMicros(latencies, 0.999)).append(',');
+        json.append("\"max\":").append(percentileMicros(latencies, 1.0)).append("},");
+        json.append("\"retransmits\":{\"server\":").append(serverRetransmits)
+                .append(",\"clients\":").append(stats.retransmits.get()).append("},");
+        json.append("\"gc\":[");
+        boolean first = true;
+        for (Map.Entry<String, long[]> gc : gcAfter.entrySet()) {
+            long[] before = gcBefore.getOrDefault(gc.getKey(), new long[2]);
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append("{\"name\":").append(jsonString(gc.getKey())).append(",\"count\":")
+                    .append(gc.getValue()[0] - before[0]).append(",\"timeMs\":")
+                    .append(gc.getValue()[1] - before[1]).append('}');
+        }
+        json.append("],");
+        if (processes > 1) {
+            json.append("\"clientProcessGc\":{\"count\":").append(clientGc[0])
+                    .append(",\"timeMs\":").append(clientGc[1]).append("},");
+        }
+        json.append("\"heapUsedKB\":").append((rt.totalMemory() - rt.freeMemory()) / 1024);
+        json.append('}');
+        System.out.println(json);
+        if (stats.stalled.get() > 0) {
+            System.err.println("Bench: " + stats.stalled.get() + " clients stalled");
+            System.exit(1);
+        }
+    }
+
+    private static void runChildProcesses(String teamNames, String moveName, int clients, int battlesPerClient,
+                                          int processes, int serverPort, boolean secure, String csvFilePath,
+                                          LatencyRecorder recorder, ClientStats stats, long[] clientGc) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<Process> children = new ArrayList<>();
+        List<Integer> shares = new ArrayList<>();
+        for (int p = 0; p < processes; p++) {
+            // Spread the clients as evenly as the division allows
+            int share = clients / processes + (p < clients % processes ? 1 : 0);
+            if (share == 0) {
+                continue;
+            }
+            List<String> command = new ArrayList<>(Arrays.asList(java, "-cp", System.getProperty("java.class.path"),
+                    "PokeBattleApp", "bench-client", teamNames, String.valueOf(share), String.valueOf(battlesPerClient),
+                    moveName, String.valueOf(serverPort), csvFilePath));
+            if (secure) {
+                command.add("--secure");
+            }
+            children.add(new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start());
+            shares.add(share);
+        }
+
+        for (int c = 0; c < children.size(); c++) {
+            Process child = children.get(c);
+            boolean reported = false;
+            long childStalled = 0;
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(child.getInputStream()))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] fields = line.split(" ");
+                    if (fields[0].equals("RESULT") && fields.length == 6) {
+                        reported = true;
+                        childStalled = Long.parseLong(fields[2]);
+                        stats.battles.addAndGet(Long.parseLong(fields[1]));
+                        stats.retransmits.addAndGet(Long.parseLong(fields[3]));
+                        clientGc[0] += Long.parseLong(fields[4]);
+                        clientGc[1] += Long.parseLong(fields[5]);
+                    } else if (fields[0].equals("LATENCIES")) {
+                        for (int i = 1; i < fields.length; i++) {
+                            recorder.record(Long.parseLong(fields[i]));
+                        }
+                    }
+                }
+            }
+            int exitCode = child.waitFor();
+            if (exitCode != 0 || !reported) {
+                // Nothing it reported can be trusted, so count all of its clients as stalled
+                System.err.println("Bench: client process " + c + " exited with " + exitCode
+                        + (reported ? "" : " without a RESULT line"));
+                childStalled = shares.get(c);
+            }
+            stats.stalled.addAndGet(childStalled);
+        }
+    }
+
+    // bench-client <PokemonName[,PokemonName...]> <clients> <battlesPerClient> <moveName> <serverPort> [csv] [--secure]
+    // Run by the bench parent; reports back on stdout in a line format it parses
+    public static void runChild(Map<String, Pokemon> pokemonDB, String[] args, boolean secure) throws Exception {
+        String teamNames = args[1].toUpperCase();
+        int clients = Integer.parseInt(args[2]);
+        int battlesPerClient = Integer.parseInt(args[3]);
+        String moveName = args[4];
+        int serverPort = Integer.parseInt(args[5]);
+
+        LatencyRecorder recorder = new LatencyRecorder();
+        ClientStats stats = new ClientStats();
+        long[] gcBefore = gcTotals();
+        runClients(pokemonDB, teamNames, moveName, clients, battlesPerClient, serverPort, secure, recorder, stats);
+        long[] gcAfter = gcTotals();
+
+        StringBuilder latencies = new StringBuilder("LATENCIES");
+        for (long latency : recorder.snapshot()) {
+            latencies.append(' ').append(latency);
+        }
+        System.out.println(latencies);
+        System.out.println("RESULT " + stats.battles.get() + " " + stats.stalled.get() + " " + stats.retransmits.get()
+                + " " + (gcAfter[0] - gcBefore[0]) + " " + (gcAfter[1] - gcBefore[1]));
+    }
+}
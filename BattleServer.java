@@ -0,0 +1,76 @@
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hosts one scripted battle per peer on a single transport. A HELLO from a new
+// peer starts a battle with its own PokeProtocolHandler; the battle is dropped
+// once it is over or the transport reaps the peer's session, so a client can
+// challenge again on the same session.
+public class BattleServer implements PokeTransportLayer.MessageListener {
+    private final PokeTransportLayer transport;
+    private final Map<String, Pokemon> pokemonDB;
+    // null mirrors each challenger's team
+    private final String teamNames;
+    private final String moveName;
+    private final ScriptedPlayer.TurnRecorder recorder;
+    private final Map<InetSocketAddress, ScriptedPlayer> battles = new ConcurrentHashMap<>();
+    private final AtomicLong battlesStarted = new AtomicLong();
+    private final AtomicLong battlesFinished = new AtomicLong();
+
+    public BattleServer(PokeTransportLayer transport, Map<String, Pokemon> pokemonDB, String teamNames,
+                        String moveName, ScriptedPlayer.TurnRecorder recorder) {
+        this.transport = transport;
+        this.pokemonDB = pokemonDB;
+        this.teamNames = teamNames;
+        this.moveName = moveName;
+        this.recorder = recorder;
+        transport.setHandler(this);
+    }
+
+    public int getActiveBattleCount() {
+        return battles.size();
+    }
+
+    public long getBattlesStarted() {
+        return battlesStarted.get();
+    }
+
+    public long getBattlesFinished() {
+        return battlesFinished.get();
+    }
+
+    @Override
+    public void onMessageReceived(String rawMessage, int seq, InetAddress ip, int port) {
+        InetSocketAddress peer = new InetSocketAddress(ip, port);
+        ScriptedPlayer player = battles.get(peer);
+        if (player == null) {
+            if (!rawMessage.startsWith("HELLO|")) {
+                // Leftover from a battle we already closed
+                return;
+            }
+            PokeProtocolHandler handler = new PokeProtocolHandler(transport, pokemonDB, true, ip, port);
+            handler.setVerbose(false);
+            if (teamNames != null) {
+                handler.setMyTeam(teamNames);
+            }
+            player = new ScriptedPlayer(handler, moveName, recorder);
+            battles.put(peer, player);
+            battlesStarted.incrementAndGet();
+        }
+
+        player.onMessageReceived(rawMessage, seq, ip, port);
+        if (player.isFinished() || player.isStalled()) {
+            battles.remove(peer);
+            battlesFinished.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void onSessionExpired(InetAddress ip, int port) {
+        ScriptedPlayer player = battles.remove(new InetSocketAddress(ip, port));
+        if (player != null) {
+            player.onSessionExpired(ip, port);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+import java.io.File;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+
+// Plays complete scripted battles between two in-process PokeProtocolHandlers over
+// loopback, with both sides' traffic going through SimulatedDatagramSocket.
+public class BattleSimulation {
+    private static final String DEFAULT_CSV_PATH = "pokemon.csv";
+    private static final long BATTLE_TIMEOUT_MS = 60_000;
+
+    public static class Conditions {
+        public double lossRate;
+        public int delayMs;
+        public int jitterMs;
+        public double duplicateRate;
+        public double reorderRate;
+        public boolean secure;
+
+        public Conditions(double lossRate, int delayMs, int jitterMs, double duplicateRate, double reorderRate) {
+            this.lossRate = lossRate;
+            this.delayMs = delayMs;
+            this.jitterMs = jitterMs;
+            this.duplicateRate = duplicateRate;
+            this.reorderRate = reorderRate;
+        }
+
+        SimulatedDatagramSocket open(long seed) throws SocketException {
+            return new SimulatedDatagramSocket(0, lossRate, delayMs, jitterMs, duplicateRate, reorderRate, seed);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("loss=%.2f delay=%dms jitter=%dms dup=%.2f reorder=%.2f%s",
+                    lossRate, delayMs, jitterMs, duplicateRate, reorderRate, secure ? " secure" : "");
+        }
+    }
+
+    public static class Result {
+        public boolean completed;
+        public long durationMs;
+        public int turns;
+        public long retransmits;
+        public long dropped;
+    }
+
+    public static Result runBattle(Map<String, Pokemon> pokemonDB, String serverPokemon, String clientPokemon,
+                                   String moveName, Conditions conditions, long seed) throws Exception {
+        SimulatedDatagramSocket serverSocket = conditions.open(seed);
+        SimulatedDatagramSocket clientSocket = conditions.open(seed + 1);
+        PokeTransportLayer serverTransport = new PokeTransportLayer(serverSocket);
+        PokeTransportLayer clientTransport = new PokeTransportLayer(clientSocket);
+        serverTransport.setVerbose(false);
+        clientTransport.setVerbose(false);
+        if (conditions.secure) {
+            serverTransport.enableSecureMode();
+            clientTransport.enableSecureMode();
+        }
+
+        PokeProtocolHandler server = new PokeProtocolHandler(serverTransport, pokemonDB, true);
+        PokeProtocolHandler client = new PokeProtocolHandler(clientTransport, pokemonDB, false);
+        server.setVerbose(false);
+        client.setVerbose(false);
+        server.setMyTeam(serverPokemon);
+
+        List<Thread> threads = new ArrayList<>();
+        threads.addAll(startTransportThreads(serverTransport));
+        threads.addAll(startTransportThreads(clientTransport));
+
+        Result result = new Result();
+        long start = System.nanoTime();
+        long deadline = start + BATTLE_TIMEOUT_MS * 1_000_000L;
+        try {
+            client.setPeerAddress("127.0.0.1", serverTransport.getLocalPort());
+            client.startHandshake(clientPokemon);
+
+            while (!(server.isGameOver() && client.isGameOver())) {
+                if (System.nanoTime() > deadline) {
+                    break;
+                }
+                PokeProtocolHandler attacker = server.isReadyToAttack() ? server
+                        : client.isReadyToAttack() ? client : null;
+                if (attacker != null) {
+                    attacker.attack(moveName);
+                    if (attacker.isReadyToAttack()) {
+                        // Rejected locally, e.g. the active Pokemon doesn't know the move
+                        break;
+                    }
+                    result.turns++;
+                } else {
+                    LockSupport.parkNanos(50_000);
+                }
+            }
+            result.completed = server.isGameOver() && client.isGameOver();
+        } finally {
+            result.durationMs = (System.nanoTime() - start) / 1_000_000L;
+            result.retransmits = serverTransport.getRetransmitCount() + clientTransport.getRetransmitCount();
+            result.dropped = serverSocket.getDroppedCount() + clientSocket.getDroppedCount();
+            serverTransport.closeSocket();
+            clientTransport.closeSocket();
+            for (Thread t : threads) {
+                t.join();
+            }
+        }
+        return result;
+    }
+
+    // Heap in use after a few full collections. Shared by every harness so their heap
+    // figures are measured the same way.
+    static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    static List<Thread> startTransportThreads(PokeTransportLayer transport) {
+        Thread listenThread = new Thread(() -> {
+            try {
+                transport.listen();
+            } catch (Exception e) {
+                System.err.println("Listen Thread Error: " + e.getMessage());
+            }
+        });
+        Thread retransmitThread = new Thread(transport::retransmissionLoop);
+        listenThread.start();
+        retransmitThread.start();
+        return Arrays.asList(listenThread, retransmitThread);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int battles = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        double loss = args.length > 1 ? Double.parseDouble(args[1]) : 0.1;
+        int delay = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int jitter = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        double duplicate = args.length > 4 ? Double.parseDouble(args[4]) : 0.05;
+        double reorder = args.length > 5 ? Double.parseDouble(args[5]) : 0.05;
+        String pokemonName = args.length > 6 ? args[6].toUpperCase() : "SNORLAX";
+        String moveName = args.length > 7 ? args[7] : "Tackle";
+        String csvFilePath = args.length > 8 ? args[8] : DEFAULT_CSV_PATH;
+        boolean secure = args.length > 9 && args[9].equalsIgnoreCase("secure");
+
+        Map<String, Pokemon> pokemonDB = CSVLoader.load(new File(csvFilePath));
+        Conditions conditions = new Conditions(loss, delay, jitter, duplicate, reorder);
+        conditions.secure = secure;
+        System.out.println("Simulating " + battles + " battles (" + pokemonName + ", " + moveName + ") with " + conditions);
+
+        int completed = 0;
+        long totalMs = 0;
+        long maxMs = 0;
+        long totalRetransmits = 0;
+        long totalTurns = 0;
+        for (int i = 0; i < battles; i++) {
+            Result r = runBattle(pokemonDB, pokemonName, pokemonName, moveName, conditions, i * 2L);
+            System.out.printf("Battle %d: %s in %d ms, %d turns, %d retransmits, %d dropped%n",
+                    i + 1, r.completed ? "completed" : "STALLED", r.durationMs, r.turns, r.retransmits, r.dropped);
+            if (r.completed) {
+                completed++;
+            }
+            totalMs += r.durationMs;
+            maxMs = Math.max(maxMs, r.durationMs);
+            totalRetransmits += r.retransmits;
+            totalTurns += r.turns;
+        }
+
+        System.out.printf("Completed %d/%d | avg %.1f ms, max %d ms | avg %.1f turns | avg %.1f retransmits%n",
+                completed, battles, (double) totalMs / battles, maxMs,
+                (double) totalTurns / battles, (double) totalRetransmits / battles);
+        if (completed < battles) {
+            System.out.println("FAILED: " + (battles - completed) + " battles did not finish");
+            System.exit(1);
+        }
+    }
+}
@@ -1,10 +1,41 @@
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.*;
 
 public class CSVLoader {
+    public static final String MOVES_FILE_NAME = "moves.csv";
+    private static final String LEARNED_BY_ALL = "all";
+    // The basic moves every species had before moves.csv existed
+    private static final String BUILT_IN_MOVES = "name,type,category,power,learned_by\n"
+            + "Tackle,normal,physical,40,all\n"
+            + "Power Hit,normal,physical,75,all\n"
+            + "Neutral Burst,normal,special,50,all\n";
+
+    // Moves are read from moves.csv next to the Pokemon CSV, else from the working
+    // directory; with neither present every species gets the built-in basic moves
     public static Map<String, Pokemon> load(File csvFile) throws Exception {
+        File movesFile = new File(csvFile.getAbsoluteFile().getParentFile(), MOVES_FILE_NAME);
+        if (!movesFile.isFile()) {
+            movesFile = new File(MOVES_FILE_NAME);
+        }
+        if (!movesFile.isFile()) {
+            System.out.println("[CSVLoader] No " + MOVES_FILE_NAME + " found, using the built-in basic moves.");
+            movesFile = null;
+        }
+        return load(csvFile, movesFile);
+    }
+
+    // A null movesFile means the built-in basic moves
+    public static Map<String, Pokemon> load(File csvFile, File movesFile) throws Exception {
+        MoveTable moveTable = new MoveTable();
+        List<Set<PokeType>> learnedBy = loadMoves(
+                movesFile != null ? new FileReader(movesFile) : new StringReader(BUILT_IN_MOVES), moveTable);
+        // Species with the same typing share one learnset array
+        Map<String, short[]> learnsets = new HashMap<>();
+
         Map<String, Pokemon> out = new LinkedHashMap<>();
         try (BufferedReader br = new BufferedReader(new FileReader(csvFile))) {
             String header = br.readLine();
@@ -33,42 +64,114 @@ public class CSVLoader {
                 int spDefense = parseIntSafe(safeGet(row, idx, "sp_defense"), 50);
                 int speed = parseIntSafe(safeGet(row, idx, "speed"), 50);
 
-                String type1 = safeGet(row, idx, "type1");
-                String type2 = safeGet(row, idx, "type2");
+                PokeType type1 = parseType(safeGet(row, idx, "type1"), name);
+                PokeType type2 = parseType(safeGet(row, idx, "type2"), name);
 
                 Pokemon p = new Pokemon(name, hp, attack, defense, spAttack, spDefense, speed,
                         type1, type2);
+                p.generation = parseIntSafe(safeGet(row, idx, "generation"), 0);
+                p.pokedexNumber = parseIntSafe(safeGet(row, idx, "pokedex_number"), 0);
+                p.isLegendary = parseIntSafe(safeGet(row, idx, "is_legendary"), 0) == 1;
 
                 for (int c = 0; c < row.length; c++){
                     String colName = cols[c].trim();
                     if (colName.startsWith("against_")){
-                        String t = colName.substring("against_".length());
+                        PokeType t;
+                        try {
+                            t = PokeType.fromName(colName.substring("against_".length()));
+                        } catch (IllegalArgumentException e) {
+                            continue; // not a type we battle with
+                        }
                         String val = row[c].trim();
                         double d = 1.0;
                         try {
                             d = Double.parseDouble(val);
                         } catch (Exception ignored){}
-                        p.against.put(t, d);
+                        p.against[t.ordinal()] = d;
                     }
                 }
 
-                p.addMove(new Move("Tackle", 40, "physical", "Normal"));
+                String typeKey = type1 + "/" + type2;
+                short[] learnset = learnsets.computeIfAbsent(typeKey, k -> buildLearnset(learnedBy, type1, type2));
+                p.setMoves(moveTable, learnset);
+
+                out.put(name.toUpperCase(), p);
+            }
+        }
+        return out;
+    }
+
+    // Returns, per move id, the types whose species learn it ("all" means every type)
+    private static List<Set<PokeType>> loadMoves(Reader movesCsv, MoveTable moveTable) throws Exception {
+        List<Set<PokeType>> learnedBy = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(movesCsv)) {
+            String header = br.readLine();
+            if (header == null) {
+                return learnedBy;
+            }
 
-                String elementalType;
-                if (type1 == null || type1.isEmpty()){
-                    elementalType = "Normal";
-                } else{
-                    elementalType = type1;
+            String[] cols = header.split(",", -1);
+            Map<String, Integer> idx = new HashMap<>();
+            for (int i = 0; i < cols.length; i++){
+                idx.put(cols[i].trim(), i);
+            }
+
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                String[] row = splitCsvLine(line);
+
+                String name = safeGet(row, idx, "name");
+                if (name.isBlank()) continue;
+
+                PokeType type = parseType(safeGet(row, idx, "type"), name);
+                if (type == null) {
+                    type = PokeType.NORMAL;
                 }
+                MoveCategory category = MoveCategory.fromName(safeGet(row, idx, "category"));
+                int power = parseIntSafe(safeGet(row, idx, "power"), 50);
 
-                p.addMove(new Move("Elemental Beam", 60, "special", elementalType));
-                p.addMove(new Move("Power Hit", 75, "physical", "Normal"));
-                p.addMove(new Move("Neutral Burst", 50, "special", "Normal"));
+                short id = moveTable.add(new Move(name, power, category, type));
+                if (id < learnedBy.size()) {
+                    continue; // duplicate name, first row wins
+                }
 
-                out.put(name.toUpperCase(), p);
+                Set<PokeType> types = EnumSet.noneOf(PokeType.class);
+                for (String t : safeGet(row, idx, "learned_by").split(";")) {
+                    if (t.trim().equalsIgnoreCase(LEARNED_BY_ALL)) {
+                        types = EnumSet.allOf(PokeType.class);
+                        break;
+                    }
+                    PokeType learner = parseType(t, name);
+                    if (learner != null) types.add(learner);
+                }
+                learnedBy.add(types);
             }
         }
-        return out;
+        return learnedBy;
+    }
+
+    // An unknown type name is logged and then treated like a blank cell (no type; NORMAL
+    // for a move), so one bad value can't abort the whole load
+    private static PokeType parseType(String typeName, String rowName) {
+        try {
+            return PokeType.fromName(typeName);
+        } catch (IllegalArgumentException e) {
+            System.out.println("[CSVLoader] Unknown type '" + typeName.trim() + "' for " + rowName + ", ignoring it.");
+            return null;
+        }
+    }
+
+    private static short[] buildLearnset(List<Set<PokeType>> learnedBy, PokeType type1, PokeType type2) {
+        short[] ids = new short[learnedBy.size()];
+        int count = 0;
+        for (int id = 0; id < learnedBy.size(); id++) {
+            Set<PokeType> types = learnedBy.get(id);
+            if ((type1 != null && types.contains(type1)) || (type2 != null && types.contains(type2))) {
+                ids[count++] = (short) id;
+            }
+        }
+        return Arrays.copyOf(ids, count);
     }
 
     private static String[] splitCsvLine(String line) {
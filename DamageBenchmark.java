@@ -0,0 +1,134 @@
+import java.io.File;
+import java.math.BigInteger;
+import java.util.*;
+
+// Microbenchmark of the damage formula every turn runs on both peers, against the
+// string-keyed version it replaced as a baseline.
+public class DamageBenchmark {
+    private static final String DEFAULT_CSV_PATH = "pokemon.csv";
+
+    // The data as the formula saw it before types and categories became enums:
+    // type names as strings and the multipliers in a HashMap keyed by type name
+    private static class StringKeyedSpecies {
+        final String name;
+        final String type1;
+        final String type2;
+        final int attack;
+        final int defense;
+        final int spAttack;
+        final int spDefense;
+        final Map<String, Double> against = new HashMap<>();
+
+        StringKeyedSpecies(Pokemon p) {
+            name = p.getName();
+            type1 = p.getType1() == null ? "" : p.getType1().toString();
+            type2 = p.getType2() == null ? "" : p.getType2().toString();
+            attack = p.getAttack();
+            defense = p.getDefense();
+            spAttack = p.getSpAttack();
+            spDefense = p.getSpDefense();
+            for (PokeType t : PokeType.values()) {
+                against.put(t.toString(), p.getEffectiveMultiplier(t));
+            }
+        }
+
+        double getEffectiveMultiplier(String moveType) {
+            return against.getOrDefault(moveType.toLowerCase(), 1.0);
+        }
+    }
+
+    private static class StringKeyedMove {
+        final int basePower;
+        final String category;
+        final String type;
+
+        StringKeyedMove(Move move) {
+            basePower = move.getBasePower();
+            category = move.getCategory().toString();
+            type = move.getType().toString();
+        }
+    }
+
+    // The pre-enum formula, kept as it was apart from seeding from names like the
+    // current one does, so both paths produce identical damage and checksums
+    private static int stringKeyedDamage(StringKeyedMove move, StringKeyedSpecies attacker, StringKeyedSpecies defender,
+                                         boolean spAttackBoost, boolean spDefenseBoost, BigInteger battleSeed) {
+        double attackStat;
+        double defenseStat;
+        if ("physical".equalsIgnoreCase(move.category)) {
+            attackStat = attacker.attack;
+            defenseStat = defender.defense;
+        } else {
+            attackStat = attacker.spAttack;
+            defenseStat = defender.spDefense;
+            if (spAttackBoost) {
+                attackStat *= 1.5;
+            }
+            if (spDefenseBoost) {
+                defenseStat *= 1.5;
+            }
+        }
+        double damageValue = move.basePower * (attackStat / defenseStat) * defender.getEffectiveMultiplier(move.type);
+
+        long seed = battleSeed.longValue() + attacker.name.hashCode() + defender.name.hashCode();
+        Random rng = new Random(seed);
+        damageValue *= 0.85 + (rng.nextDouble() * 0.15);
+
+        if (move.type.equalsIgnoreCase(attacker.type1) || move.type.equalsIgnoreCase(attacker.type2)) {
+            damageValue *= 1.5;
+        }
+        return Math.max(1, (int) Math.round(damageValue));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int callsPerRound = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+        Map<String, Pokemon> pokemonDB = CSVLoader.load(new File(args.length > 2 ? args[2] : DEFAULT_CSV_PATH));
+
+        // A spread of matchups so type lookups and STAB checks see every case
+        Pokemon[] species = pokemonDB.values().toArray(new Pokemon[0]);
+        int pairs = 1024;
+        Pokemon[] attackers = new Pokemon[pairs];
+        Pokemon[] defenders = new Pokemon[pairs];
+        Move[] moves = new Move[pairs];
+        StringKeyedSpecies[] oldAttackers = new StringKeyedSpecies[pairs];
+        StringKeyedSpecies[] oldDefenders = new StringKeyedSpecies[pairs];
+        StringKeyedMove[] oldMoves = new StringKeyedMove[pairs];
+        Random random = new Random(42);
+        for (int i = 0; i < pairs; i++) {
+            attackers[i] = species[random.nextInt(species.length)];
+            defenders[i] = species[random.nextInt(species.length)];
+            List<Move> learnset = attackers[i].getMoves();
+            moves[i] = learnset.get(random.nextInt(learnset.size()));
+            oldAttackers[i] = new StringKeyedSpecies(attackers[i]);
+            oldDefenders[i] = new StringKeyedSpecies(defenders[i]);
+            oldMoves[i] = new StringKeyedMove(moves[i]);
+        }
+
+        BigInteger battleSeed = new BigInteger(256, random);
+        long seedBase = battleSeed.longValue();
+        for (int round = 0; round < rounds; round++) {
+            long checksum = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < callsPerRound; i++) {
+                int k = i & (pairs - 1);
+                checksum += PokeProtocolHandler.calculateDamage(moves[k], attackers[k], defenders[k], (i & 1) == 0, (i & 2) == 0, seedBase);
+            }
+            long enumNs = System.nanoTime() - start;
+
+            long oldChecksum = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < callsPerRound; i++) {
+                int k = i & (pairs - 1);
+                oldChecksum += stringKeyedDamage(oldMoves[k], oldAttackers[k], oldDefenders[k], (i & 1) == 0, (i & 2) == 0, battleSeed);
+            }
+            long stringNs = System.nanoTime() - start;
+
+            if (checksum != oldChecksum) {
+                throw new IllegalStateException("Damage differs: enum path " + checksum + ", string path " + oldChecksum);
+            }
+            System.out.printf("Round %d: enum-indexed %.1f ns/call | string-keyed baseline %.1f ns/call%n",
+                    round + 1, (double) enumNs / callsPerRound, (double) stringNs / callsPerRound);
+        }
+    }
+}
@@ -1,10 +1,10 @@
 public class Move {
     public String name;
     public int basePower; 
-    public String category;
-    public String type;
+    public MoveCategory category;
+    public PokeType type;
 
-    public Move(String name, int basePower, String category, String type) {
+    public Move(String name, int basePower, MoveCategory category, PokeType type) {
         this.name = name;
         this.basePower = basePower;
         this.category = category;
@@ -19,11 +19,11 @@ public class Move {
         return basePower; 
     }
 
-    public String getCategory() { 
+    public MoveCategory getCategory() { 
         return category; 
     }
 
-    public String getType() { 
+    public PokeType getType() { 
         return type; 
     }
 
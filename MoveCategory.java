@@ -0,0 +1,13 @@
+public enum MoveCategory {
+    PHYSICAL, SPECIAL;
+
+    // Anything other than "physical" has always been treated as special
+    public static MoveCategory fromName(String name) {
+        return "physical".equalsIgnoreCase(name == null ? "" : name.trim()) ? PHYSICAL : SPECIAL;
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase();
+    }
+}
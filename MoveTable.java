@@ -0,0 +1,37 @@
+import java.util.*;
+
+// Every move loaded from moves.csv, stored once and addressed by a small id.
+// Species keep only an id array into this table (see Pokemon.moveIds).
+public class MoveTable {
+    private final List<Move> moves = new ArrayList<>();
+    private final Map<String, Short> idsByName = new HashMap<>();
+
+    public short add(Move move) {
+        String key = move.getName().toUpperCase();
+        Short existing = idsByName.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        if (moves.size() > Short.MAX_VALUE) {
+            throw new IllegalStateException("Too many moves for a short id: " + moves.size());
+        }
+        short id = (short) moves.size();
+        moves.add(move);
+        idsByName.put(key, id);
+        return id;
+    }
+
+    public Move get(int id) {
+        return moves.get(id);
+    }
+
+    // Case-insensitive; returns -1 when there is no such move
+    public int idOf(String moveName) {
+        Short id = idsByName.get(moveName.toUpperCase());
+        return id == null ? -1 : id;
+    }
+
+    public int size() {
+        return moves.size();
+    }
+}
@@ -14,8 +14,40 @@ public class PokeBattleApp {
   }
 
   public static void main(String[] args) throws Exception {
+    List<String> argList = new ArrayList<>(Arrays.asList(args));
+    boolean secure = argList.remove("--secure");
+    Integer shardCount = null;
+    for (Iterator<String> it = argList.iterator(); it.hasNext(); ) {
+      String arg = it.next();
+      if (arg.startsWith("--shards=")) {
+        shardCount = Integer.parseInt(arg.substring("--shards=".length()));
+        it.remove();
+      }
+    }
+    args = argList.toArray(new String[0]);
+
     if (args.length < 2) {
-      System.out.println("Usage: java PokeBattleApp <server|client> <PokemonName> [opponentIP] [csv_file_path]");
+      System.out.println("Usage: java PokeBattleApp <server|client> <PokemonName[,PokemonName...]> [opponentIP] [csv_file_path] [--secure]");
+      System.out.println("       java PokeBattleApp bench <PokemonName[,PokemonName...]> [clients] [battlesPerClient] [moveName] [processes] [csv_file_path] [--secure] [--shards=N]");
+      System.out.println("Moves come from moves.csv next to the Pokemon CSV (or in the working directory); without one, every Pokemon gets the basic moves.");
+      return;
+    }
+
+    // Only the bench server hosts many peers; an interactive battle is one peer on one socket
+    if (shardCount != null && !args[0].equalsIgnoreCase("bench")) {
+      System.out.println("--shards only applies to bench mode.");
+      return;
+    }
+
+    // Scripted load test on loopback; see BattleBench
+    if (args[0].equalsIgnoreCase("bench") || args[0].equalsIgnoreCase("bench-client")) {
+      String benchCsvPath = args.length > 6 ? args[6] : DEFAULT_CSV_PATH;
+      Map<String, Pokemon> pokemonDB = loadPokemonData(benchCsvPath);
+      if (args[0].equalsIgnoreCase("bench")) {
+        BattleBench.run(pokemonDB, args, secure, shardCount != null ? shardCount : 1, benchCsvPath);
+      } else {
+        BattleBench.runChild(pokemonDB, args, secure);
+      }
       return;
     }
     
@@ -29,8 +61,17 @@ public class PokeBattleApp {
     System.out.println("Starting PokeBattleApp...");
     int listeningPort = isServer ? DEFAULT_PORT : 0;
     PokeTransportLayer transport = new PokeTransportLayer(listeningPort);
+    if (secure) {
+      // Both sides must pass --secure; plaintext packets are dropped in this mode
+      transport.enableSecureMode();
+      System.out.println("Secure mode: packets are encrypted and authenticated.");
+    }
     
     PokeProtocolHandler handler = new PokeProtocolHandler(transport, pokemonDB, isServer);
+    if (isServer) {
+      // Before the listen thread starts, or an early HELLO would mirror the challenger's team
+      handler.setMyTeam(myPokemonName);
+    }
     
     Thread listenThread = new Thread(() -> {
       try {
@@ -85,6 +126,12 @@ public class PokeBattleApp {
           case "boost":
             handler.useSpecialAttackBoost();
             break;
+          case "moves":
+            System.out.println(handler.getMyPokemon().getMoves());
+            break;
+          case "switch":
+            handler.switchPokemon(Integer.parseInt(argument) - 1);
+            break;
           case "quit":
           case "exit":
             System.out.println("Shutting down...");
@@ -92,7 +139,7 @@ public class PokeBattleApp {
             System.exit(0);
             break;
           default:
-            System.out.println("Unknown command. Use: attack <moveName>, boost, chat <message>, or quit.");
+            System.out.println("Unknown command. Use: attack <moveName>, moves, boost, switch <teamSlot>, chat <message>, or quit.");
             break;
         }
       } catch (Exception e) {
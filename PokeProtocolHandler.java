@@ -2,7 +2,7 @@ import java.net.*;
 import java.math.BigInteger;
 import java.util.*;
 
-public class PokeProtocolHandler {
+public class PokeProtocolHandler implements PokeTransportLayer.MessageListener {
 
     private enum State {
         INIT,
@@ -17,10 +17,14 @@ public class PokeProtocolHandler {
     private final Map<String, Pokemon> pokemonDB;
     private final boolean isServer;
 
-    private State currentState = State.INIT;
+    private volatile State currentState = State.INIT;
+    private Team myTeam;
+    private Team opponentTeam;
+    // Active members of the two teams
     private Pokemon myPokemon;
     private Pokemon opponentPokemon;
     private BigInteger battleSeed;
+    private long battleSeedBase;
 
     private InetAddress peerIP;
     private int peerPort;
@@ -32,12 +36,24 @@ public class PokeProtocolHandler {
 
     private String announcedMoveName;
     private int announcedDamage;
+    private boolean pendingAttackBoosted = false;
+    private boolean verbose = true;
+    private volatile int completedAttacks = 0;
 
     public PokeProtocolHandler(PokeTransportLayer transport, Map<String, Pokemon> pokemonDB, boolean isServer) {
+        this(transport, pokemonDB, isServer, null, 0);
+        transport.setHandler(this);
+    }
+
+    // One of several battles on a shared transport: the caller owns the transport's
+    // listener and routes this peer's messages here (see BattleServer)
+    public PokeProtocolHandler(PokeTransportLayer transport, Map<String, Pokemon> pokemonDB, boolean isServer,
+                               InetAddress peerIP, int peerPort) {
         this.transport = transport;
         this.pokemonDB = pokemonDB;
         this.isServer = isServer;
-        transport.setHandler(this);
+        this.peerIP = peerIP;
+        this.peerPort = peerPort;
 
         if (isServer) {
             currentState = State.READY_TO_DEFEND;
@@ -49,6 +65,43 @@ public class PokeProtocolHandler {
         this.peerPort = port;
     }
 
+    // Accepts a single name or a comma-separated team of up to Team.MAX_SIZE
+    public void setMyTeam(String myPokemonNames) {
+        this.myTeam = Team.fromNames(pokemonDB, myPokemonNames);
+        this.myPokemon = myTeam.getActive();
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    public boolean isReadyToAttack() {
+        return currentState == State.READY_TO_ATTACK;
+    }
+
+    public boolean isGameOver() {
+        return currentState == State.GAME_OVER;
+    }
+
+    public Pokemon getMyPokemon() {
+        return myPokemon;
+    }
+
+    public Team getMyTeam() {
+        return myTeam;
+    }
+
+    // Our attacks that the opponent has confirmed, i.e. turns we finished as attacker
+    public int getCompletedAttacks() {
+        return completedAttacks;
+    }
+
+    private void log(String message) {
+        if (verbose) {
+            System.out.println(message);
+        }
+    }
+
     private void send(String message) {
         if (peerIP == null || peerPort == 0) {
             System.err.println("Cannot send: Peer address not set.");
@@ -81,24 +134,28 @@ public class PokeProtocolHandler {
         return parts;
     }
 
-    public void startHandshake(String myPokemonName) {
-        this.myPokemon = pokemonDB.get(myPokemonName);
-        if (myPokemon == null) {
-            throw new RuntimeException("Pokemon not found!: " + myPokemonName);
-        }
+    public void startHandshake(String myPokemonNames) {
+        setMyTeam(myPokemonNames);
 
-        String setup = buildMessage("HELLO", myPokemonName);
+        String setup = buildMessage("HELLO", myTeam.getNames());
         send(setup);
     }
 
+    @Override
     public void onMessageReceived(String rawMessage, int seq, InetAddress ip, int port) {
-        this.peerIP = ip;
-        this.peerPort = port;
+        if (peerIP == null) {
+            // The server learns its opponent from the first message
+            this.peerIP = ip;
+            this.peerPort = port;
+        } else if (!peerIP.equals(ip) || peerPort != port) {
+            System.out.println("[Error] Ignoring message from " + ip + ":" + port + ", not the current opponent.");
+            return;
+        }
 
         Map<String, String> message = parseMessage(rawMessage);
         String command = message.get("command");
         
-        System.out.println("\n[Protocol] Received: " + command);
+        log("\n[Protocol] Received: " + command);
 
         switch (command) {
             case "HELLO":
@@ -125,6 +182,9 @@ public class PokeProtocolHandler {
             case "CHAT":
                 handleChat(message.get("arg1"));
                 break;
+            case "SWITCH":
+                handleSwitch(message.get("arg1"));
+                break;
             case "BOOST_REQUEST":
                 handleBoostRequest(message.get("arg1"));
                 break;
@@ -132,48 +192,78 @@ public class PokeProtocolHandler {
                 handleQuit();
                 break;
             default:
-                System.out.println("[Error] Unknown command: " + command);
+                log("[Error] Unknown command: " + command);
                 break;
         }
         printStatus();
     }
     
-    private void handleHello(String opponentName) {
-        this.myPokemon = pokemonDB.get(isServer ? opponentName : myPokemon.getName().toUpperCase());
-        if (myPokemon == null) {
-            throw new RuntimeException("Pokemon not found!: " + myPokemon.getName());
+    @Override
+    public void onSessionExpired(InetAddress ip, int port) {
+        if (!ip.equals(peerIP) || port != peerPort || currentState == State.GAME_OVER) {
+            return;
+        }
+        currentState = State.GAME_OVER;
+        log("\n[System] Opponent stopped responding. Battle abandoned.");
+    }
+
+    private void handleHello(String opponentNames) {
+        if (myTeam == null) {
+            // No team chosen for this side, mirror the challenger's pick
+            setMyTeam(opponentNames);
         }
-        this.opponentPokemon = pokemonDB.get(opponentName);
         
         battleSeed = new BigInteger(256, new Random());
-        System.out.println("[System] Received HELLO from " + opponentName + ". Generating battle seed.");
+        battleSeedBase = battleSeed.longValue();
+        log("[System] Received HELLO from " + opponentNames + ". Generating battle seed.");
         
         String welcome = buildMessage("WELCOME", battleSeed.toString());
         send(welcome);
         
-        String setup = buildMessage("BATTLE_SETUP", myPokemon.getName().toUpperCase(), myPokemon.getStatsString(), String.valueOf(mySpecialAttackBoosts), String.valueOf(mySpecialDefenseBoosts));
-        send(setup);
+        sendBattleSetup();
         
         currentState = State.AWAITING_RESOLUTION;
     }
     
     private void handleWelcome(String seed) {
         battleSeed = new BigInteger(seed);
-        System.out.println("[System] Received WELCOME. Seed stored: " + battleSeed.toString());
+        battleSeedBase = battleSeed.longValue();
+        log("[System] Received WELCOME. Seed stored: " + battleSeed.toString());
         
-        String setup = buildMessage("BATTLE_SETUP", myPokemon.getName().toUpperCase(), myPokemon.getStatsString(), String.valueOf(mySpecialAttackBoosts), String.valueOf(mySpecialDefenseBoosts));
-        send(setup);
+        sendBattleSetup();
         
         currentState = State.AWAITING_RESOLUTION;
     }
 
-private void handleBattleSetup(String opponentName, String opponentStats, String spAttackBoosts, String spDefenseBoosts) {
-    this.opponentPokemon = pokemonDB.get(opponentName);
-    if (opponentPokemon == null) {
-         throw new RuntimeException("Opponent Pokemon not found!: " + opponentName);
+    // Full stats for the whole team go out once here; SWITCH later only carries an index
+    private void sendBattleSetup() {
+        String setup = buildMessage("BATTLE_SETUP", myTeam.getNames(), myTeam.getStatsString(), String.valueOf(mySpecialAttackBoosts), String.valueOf(mySpecialDefenseBoosts));
+        send(setup);
+    }
+
+private void handleBattleSetup(String opponentNames, String opponentStats, String spAttackBoosts, String spDefenseBoosts) {
+    this.opponentTeam = Team.fromNames(pokemonDB, opponentNames);
+    this.opponentPokemon = opponentTeam.getActive();
+    
+    String[] memberStats = opponentStats.split(";");
+    if (memberStats.length != opponentTeam.size()) {
+        System.err.println("[Error] Received stats for " + memberStats.length + " Pokemon, expected " + opponentTeam.size());
+    }
+    for (int i = 0; i < memberStats.length && i < opponentTeam.size(); i++) {
+        applyStats(opponentTeam.get(i), memberStats[i]);
     }
     
-    String[] stats = opponentStats.split(",");
+    if (isServer && currentState == State.AWAITING_RESOLUTION) {
+        currentState = State.READY_TO_ATTACK;
+        log("[System] Setup complete. Ready to ATTACK.");
+    } else if (!isServer && currentState == State.AWAITING_RESOLUTION) {
+        currentState = State.READY_TO_DEFEND;
+        log("[System] Setup complete. Ready to DEFEND.");
+    }
+}
+
+private void applyStats(Pokemon target, String statsString) {
+    String[] stats = statsString.split(",");
     if (stats.length == 6) {
         
         int maxHp = Integer.parseInt(stats[0]);
@@ -183,24 +273,16 @@ private void handleBattleSetup(String opponentName, String opponentStats, String
         int spDefense = Integer.parseInt(stats[4]);
         int speed = Integer.parseInt(stats[5]);
         
-        this.opponentPokemon.maxHp = maxHp;
-        this.opponentPokemon.hp = maxHp;
-        this.opponentPokemon.attack = attack;
-        this.opponentPokemon.defense = defense;
-        this.opponentPokemon.spAttack = spAttack;
-        this.opponentPokemon.spDefense = spDefense;
-        this.opponentPokemon.speed = speed;
+        target.maxHp = maxHp;
+        target.hp = maxHp;
+        target.attack = attack;
+        target.defense = defense;
+        target.spAttack = spAttack;
+        target.spDefense = spDefense;
+        target.speed = speed;
         
     } else {
-        System.err.println("[Error] Received invalid number of stats for opponent: " + opponentStats);
-    }
-    
-    if (isServer && currentState == State.AWAITING_RESOLUTION) {
-        currentState = State.READY_TO_ATTACK;
-        System.out.println("[System] Setup complete. Ready to ATTACK.");
-    } else if (!isServer && currentState == State.AWAITING_RESOLUTION) {
-        currentState = State.READY_TO_DEFEND;
-        System.out.println("[System] Setup complete. Ready to DEFEND.");
+        System.err.println("[Error] Received invalid number of stats for opponent: " + statsString);
     }
 }
 
@@ -217,11 +299,12 @@ private void handleBattleSetup(String opponentName, String opponentStats, String
         }
 
         String boostStatus = isSpecialAttackActive ? "BOOSTED" : "NONE";
-        String announce = buildMessage("ATTACK_ANNOUNCE", moveName, boostStatus);
-        send(announce);
-
+        pendingAttackBoosted = isSpecialAttackActive;
         isSpecialAttackActive = false;
         currentState = State.AWAITING_RESOLUTION;
+
+        String announce = buildMessage("ATTACK_ANNOUNCE", moveName, boostStatus);
+        send(announce);
     }
 
     public void useSpecialAttackBoost() {
@@ -232,12 +315,44 @@ private void handleBattleSetup(String opponentName, String opponentStats, String
         if (mySpecialAttackBoosts > 0) {
             mySpecialAttackBoosts--;
             isSpecialAttackActive = true;
-            System.out.println("[System] Special Attack boost activated for the next attack.");
+            log("[System] Special Attack boost activated for the next attack.");
         } else {
             System.out.println("[Error] No Special Attack boosts remaining.");
         }
     }
 
+    // Switching uses up this turn; the peer already has the member's stats from BATTLE_SETUP
+    public void switchPokemon(int index) {
+        if (currentState != State.READY_TO_ATTACK) {
+            System.out.println("[Error] Can only SWITCH on your turn to ATTACK.");
+            return;
+        }
+        if (!myTeam.switchTo(index)) {
+            System.out.println("[Error] Cannot switch to team slot " + (index + 1) + ".");
+            return;
+        }
+        myPokemon = myTeam.getActive();
+        currentState = State.READY_TO_DEFEND;
+        log("[System] Switched to " + myPokemon.getName() + ".");
+
+        String switchMessage = buildMessage("SWITCH", String.valueOf(index));
+        send(switchMessage);
+    }
+
+    private void handleSwitch(String indexStr) {
+        if (currentState != State.READY_TO_DEFEND) {
+            System.out.println("[Error] Unexpected SWITCH.");
+            return;
+        }
+        if (!opponentTeam.switchTo(Integer.parseInt(indexStr))) {
+            System.out.println("[Error] Opponent switched to an invalid team slot: " + indexStr);
+            return;
+        }
+        opponentPokemon = opponentTeam.getActive();
+        currentState = State.READY_TO_ATTACK;
+        log("[Opponent] Switched to " + opponentPokemon.getName() + ". Ready to ATTACK.");
+    }
+
     public void sendChatMessage(String message) {
         String chat = buildMessage("CHAT", message);
         send(chat);
@@ -245,14 +360,14 @@ private void handleBattleSetup(String opponentName, String opponentStats, String
     }
     
     private void handleChat(String message) {
-        System.out.println("[Opponent] " + message);
+        log("[Opponent] " + message);
     }
 
     private void handleBoostRequest(String boostType) {
         if (boostType.equals("SP_DEFENSE")) {
             isSpecialDefenseActive = true;
             mySpecialDefenseBoosts--;
-            System.out.println("[Opponent] Used Special Defense boost for this turn!");
+            log("[Opponent] Used Special Defense boost for this turn!");
         }
     }
 
@@ -269,8 +384,9 @@ private void handleBattleSetup(String opponentName, String opponentStats, String
             return;
         }
         
-        if (boostStatus.equals("BOOSTED")) {
-            System.out.println("[Opponent] Announced a Special Attack boost!");
+        boolean attackBoosted = boostStatus.equals("BOOSTED");
+        if (attackBoosted) {
+            log("[Opponent] Announced a Special Attack boost!");
         }
 
         if (mySpecialDefenseBoosts > 0) {
@@ -278,10 +394,10 @@ private void handleBattleSetup(String opponentName, String opponentStats, String
             isSpecialDefenseActive = true;
             String boostRequest = buildMessage("BOOST_REQUEST", "SP_DEFENSE");
             send(boostRequest);
-            System.out.println("[System] Used Special Defense boost in response to attack!");
+            log("[System] Used Special Defense boost in response to attack!");
         }
 
-        int damage = calculateDamage(move, opponentPokemon, myPokemon, isSpecialAttackActive, isSpecialDefenseActive);
+        int damage = calculateDamage(move, opponentPokemon, myPokemon, attackBoosted, isSpecialDefenseActive);
         
         isSpecialDefenseActive = false;
 
@@ -301,20 +417,21 @@ private void handleBattleSetup(String opponentName, String opponentStats, String
         }
         
         int announcedDamage = Integer.parseInt(damageStr);
-        Move move = opponentPokemon.getMove(moveName);
+        Move move = myPokemon.getMove(moveName);
         
-        int myCalculatedDamage = calculateDamage(move, opponentPokemon, myPokemon, isSpecialAttackActive, isSpecialDefenseActive);
+        // We are the attacker here: the opponent sent the damage its Pokemon takes
+        int myCalculatedDamage = calculateDamage(move, myPokemon, opponentPokemon, pendingAttackBoosted, isSpecialDefenseActive);
         isSpecialDefenseActive = false;
+        pendingAttackBoosted = false;
 
         if (myCalculatedDamage == announcedDamage) {
-            System.out.println("[System] Local damage calculation verified: " + myCalculatedDamage);
+            log("[System] Local damage calculation verified: " + myCalculatedDamage);
             
-            myPokemon.setHp(Math.max(0, myPokemon.getHp() - myCalculatedDamage));
+            opponentPokemon.setHp(Math.max(0, opponentPokemon.getHp() - myCalculatedDamage));
+            currentState = State.AWAITING_CONFIRMATION;
             
             String report = buildMessage("CALCULATION_REPORT", moveName, damageStr);
             send(report);
-
-            currentState = State.AWAITING_CONFIRMATION;
         } else {
             System.err.println("[Error] Damage mismatch! Local: " + myCalculatedDamage + ", Peer: " + announcedDamage);
         }
@@ -323,48 +440,73 @@ private void handleBattleSetup(String opponentName, String opponentStats, String
     private void handleCalculationReport(String moveName, String damageStr) {
         int damage = Integer.parseInt(damageStr);
         
-        opponentPokemon.setHp(Math.max(0, opponentPokemon.getHp() - damage));
+        // We are the defender here: the verified damage lands on our Pokemon
+        myPokemon.setHp(Math.max(0, myPokemon.getHp() - damage));
         
-        System.out.println("[System] Damage Report received and applied. Opponent's HP: " + opponentPokemon.getHp());
+        log("[System] Damage Report received and applied. Your HP: " + myPokemon.getHp());
 
         String confirm = buildMessage("CALCULATION_CONFIRM", "OK");
         send(confirm);
-        
-        currentState = State.AWAITING_CONFIRMATION;
+
+        if (myPokemon.getHp() <= 0 && myTeam.advanceToNextAlive()) {
+            myPokemon = myTeam.getActive();
+            log("[System] Your Pokemon fainted! Sending out " + myPokemon.getName() + ".");
+        }
+
+        // Only take the turn once the confirm is queued, so our next attack can't overtake it
+        if (!checkGameOver()) {
+            currentState = State.READY_TO_ATTACK;
+            log("[System] Turn finished. Ready to ATTACK.");
+        }
     }
 
     private void handleCalculationConfirm() {
-        if (myPokemon.getHp() <= 0 || opponentPokemon.getHp() <= 0) {
-            currentState = State.GAME_OVER;
-            System.out.println("[System] Battle Over!");
-            if (myPokemon.getHp() > opponentPokemon.getHp()) {
-                System.out.println("[System] YOU WIN!");
-            } else if (opponentPokemon.getHp() > myPokemon.getHp()) {
-                System.out.println("[System] YOU LOSE!");
-            } else {
-                System.out.println("[System] It's a DRAW!");
-            }
+        completedAttacks++;
+        if (opponentPokemon.getHp() <= 0 && opponentTeam.advanceToNextAlive()) {
+            opponentPokemon = opponentTeam.getActive();
+            log("[System] Opponent's Pokemon fainted! They send out " + opponentPokemon.getName() + ".");
+        }
+
+        if (checkGameOver()) {
             return;
         }
 
         if (currentState == State.AWAITING_CONFIRMATION) {
-            if (isServer) {
-                currentState = State.READY_TO_DEFEND;
-                System.out.println("[System] Turn finished. Ready to DEFEND.");
-            } else {
-                currentState = State.READY_TO_ATTACK;
-                System.out.println("[System] Turn finished. Ready to ATTACK.");
-            }
+            currentState = State.READY_TO_DEFEND;
+            log("[System] Turn finished. Ready to DEFEND.");
+        }
+    }
+
+    private boolean checkGameOver() {
+        boolean myTeamDefeated = myTeam.isDefeated();
+        boolean opponentTeamDefeated = opponentTeam.isDefeated();
+        if (!myTeamDefeated && !opponentTeamDefeated) {
+            return false;
+        }
+        currentState = State.GAME_OVER;
+        log("[System] Battle Over!");
+        if (opponentTeamDefeated && !myTeamDefeated) {
+            log("[System] YOU WIN!");
+        } else if (myTeamDefeated && !opponentTeamDefeated) {
+            log("[System] YOU LOSE!");
+        } else {
+            log("[System] It's a DRAW!");
         }
+        return true;
     }
     
     private int calculateDamage(Move move, Pokemon attacker, Pokemon defender, boolean spAttackBoost, boolean spDefenseBoost) {
+        return calculateDamage(move, attacker, defender, spAttackBoost, spDefenseBoost, battleSeedBase);
+    }
+
+    // Pure function of its arguments so both peers, and DamageBenchmark, get the same result
+    static int calculateDamage(Move move, Pokemon attacker, Pokemon defender, boolean spAttackBoost, boolean spDefenseBoost, long seedBase) {
         double basePower = move.getBasePower();
         double attackStat;
         double defenseStat;
         double typeEffectiveness;
 
-        if ("physical".equalsIgnoreCase(move.getCategory())) {
+        if (move.getCategory() == MoveCategory.PHYSICAL) {
             attackStat = attacker.getAttack();
             defenseStat = defender.getDefense();
         } else { 
@@ -383,13 +525,14 @@ private void handleBattleSetup(String opponentName, String opponentStats, String
 
         double damageValue = basePower * (attackStat / defenseStat) * typeEffectiveness;
         
-        long seed = battleSeed.longValue() + attacker.hashCode() + defender.hashCode();
+        // Names, not identity hash codes, so both peers derive the same roll
+        long seed = seedBase + attacker.getName().hashCode() + defender.getName().hashCode();
         Random rng = new Random(seed);
         double randomFactor = 0.85 + (rng.nextDouble() * 0.15);
         
         damageValue *= randomFactor;
 
-        if (move.getType().equalsIgnoreCase(attacker.getType1()) || move.getType().equalsIgnoreCase(attacker.getType2())) {
+        if (move.getType() == attacker.getType1() || move.getType() == attacker.getType2()) {
             damageValue *= 1.5;
         }
         
@@ -397,9 +540,16 @@ private void handleBattleSetup(String opponentName, String opponentStats, String
     }
     
     private void printStatus() {
+        if (!verbose) {
+            return;
+        }
         if (myPokemon != null) {
             System.out.print(myPokemon.getName() + " HP: " + myPokemon.getHp());
+            System.out.print(" (" + myTeam.remaining() + "/" + myTeam.size() + " left)");
             System.out.print(" | Opponent " + (opponentPokemon != null ? opponentPokemon.getName() : "???") + " HP: " + (opponentPokemon != null ? opponentPokemon.getHp() : "???"));
+            if (opponentTeam != null) {
+                System.out.print(" (" + opponentTeam.remaining() + "/" + opponentTeam.size() + " left)");
+            }
             System.out.println(" | State: " + currentState);
         }
         System.out.print("> ");
@@ -1,18 +1,68 @@
 import java.io.IOException;
 import java.net.*;
+import java.security.GeneralSecurityException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class PokeTransportLayer {
     private static final int RETRANSMISSION_TIMEOUT_MS = 500;
     private static final int MAX_PACKET_SIZE = 1024;
     private static final int LISTEN_TIMEOUT_MS = 100;
+    private static final long DEFAULT_HEARTBEAT_INTERVAL_MS = 2_000;
+    private static final long DEFAULT_IDLE_TIMEOUT_MS = 10_000;
+    private static final int INITIAL_WINDOW = 4;
+    private static final int MAX_WINDOW = 64;
+    private static final int MAX_QUEUED_MESSAGES = 256;
+    // Peers that may open a session with us; beyond this new peers are ignored until some are reaped
+    private static final int MAX_SESSIONS = 4096;
 
     private DatagramSocket socket;
-    private PokeProtocolHandler handler;
-    private final Map<Integer, PacketInfo> unackedMessages = new ConcurrentHashMap<>();
-    private int mySeq = 0;
-    private int peerSeq = -1;
+    private MessageListener handler;
+    private final Map<SocketAddress, PeerSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong retransmitCount = new AtomicLong();
+    private final AtomicLong reapedSessionCount = new AtomicLong();
+    private final AtomicLong throttledCount = new AtomicLong();
+    private final AtomicLong refusedSessionCount = new AtomicLong();
+    private boolean verbose = true;
+    private boolean secure = false;
+    private volatile long heartbeatIntervalMs = DEFAULT_HEARTBEAT_INTERVAL_MS;
+    private volatile long idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+
+    public interface MessageListener {
+        void onMessageReceived(String rawMessage, int seq, InetAddress ip, int port);
+
+        // The peer was silent for longer than the idle timeout and its state has been dropped
+        default void onSessionExpired(InetAddress ip, int port) {
+        }
+    }
+
+    // Everything kept for one peer. Reaping a session drops its unacked packets with it.
+    // At most congestionWindow packets are in flight; the rest wait in sendQueue, which is
+    // bounded so an unresponsive peer can't grow memory. Window and queue are guarded by
+    // the session's monitor.
+    private class PeerSession {
+        final InetAddress address;
+        final int port;
+        final Map<Integer, PacketInfo> unackedMessages = new ConcurrentHashMap<>();
+        final ArrayDeque<PacketInfo> sendQueue = new ArrayDeque<>();
+        double congestionWindow = INITIAL_WINDOW;
+        // Highest sequence in flight at the last window cut; losses at or below it are the same episode
+        int recoveryPoint = -1;
+        final AtomicInteger mySeq = new AtomicInteger();
+        int peerSeq = -1;
+        volatile long lastHeard;
+        volatile long lastSent;
+        SecureSession secureSession;
+
+        PeerSession(InetAddress address, int port) {
+            this.address = address;
+            this.port = port;
+            this.lastHeard = System.currentTimeMillis();
+            this.lastSent = lastHeard;
+        }
+    }
 
     private class PacketInfo {
         final byte[] data;
@@ -31,49 +81,287 @@ public class PokeTransportLayer {
     }
 
     public PokeTransportLayer(int port) throws SocketException {
-        this.socket = new DatagramSocket(port);
+        this(new DatagramSocket(port));
+    }
+
+    // Lets callers plug in a different datagram layer, e.g. a SimulatedDatagramSocket
+    public PokeTransportLayer(DatagramSocket socket) throws SocketException {
+        this.socket = socket;
         this.socket.setSoTimeout(LISTEN_TIMEOUT_MS);
-        System.out.println("[Transport] Listening on port: " + this.socket.getLocalPort());
     }
 
-    public void setHandler(PokeProtocolHandler handler) {
+    // Opens up to shardCount transports on the same port with SO_REUSEPORT. The kernel
+    // hashes each peer's address to one socket, so a peer always lands on the same shard
+    // and each shard's listen thread and sessions stay independent. Falls back to a single
+    // transport where the option isn't available. Port 0 picks a free port for all shards.
+    public static List<PokeTransportLayer> openShards(int port, int shardCount) throws IOException {
+        List<PokeTransportLayer> shards = new ArrayList<>();
+        if (shardCount <= 1 || !isReusePortSupported()) {
+            shards.add(new PokeTransportLayer(port));
+            return shards;
+        }
+        for (int i = 0; i < shardCount; i++) {
+            DatagramSocket socket = new DatagramSocket(null);
+            try {
+                socket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                socket.bind(new InetSocketAddress(port));
+            } catch (IOException e) {
+                socket.close();
+                for (PokeTransportLayer shard : shards) {
+                    shard.closeSocket();
+                }
+                throw e;
+            }
+            // Every later shard joins the port the first one got
+            port = socket.getLocalPort();
+            shards.add(new PokeTransportLayer(socket));
+        }
+        return shards;
+    }
+
+    public static boolean isReusePortSupported() {
+        try (DatagramSocket probe = new DatagramSocket(null)) {
+            return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (SocketException e) {
+            return false;
+        }
+    }
+
+    public void setHandler(MessageListener handler) {
         this.handler = handler;
     }
 
-    private void send(byte[] data, InetAddress address, int port) throws IOException {
-        DatagramPacket packet = new DatagramPacket(data, data.length, address, port);
+    // Both peers must enable this before the HELLO; see SecureSession for the handshake.
+    // The key exchange is unauthenticated (anonymous DH): it stops eavesdropping and
+    // forged packets, but not an active man-in-the-middle.
+    public void enableSecureMode() {
+        this.secure = true;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    // A peer we haven't sent anything to for this long gets a repeated ACK as a keepalive
+    public void setHeartbeatIntervalMs(long heartbeatIntervalMs) {
+        this.heartbeatIntervalMs = heartbeatIntervalMs;
+    }
+
+    // A peer we haven't heard from for this long is reaped along with its unacked packets
+    public void setIdleTimeoutMs(long idleTimeoutMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    public int getLocalPort() {
+        return socket.getLocalPort();
+    }
+
+    public long getRetransmitCount() {
+        return retransmitCount.get();
+    }
+
+    public int getUnackedCount() {
+        int count = 0;
+        for (PeerSession session : sessions.values()) {
+            count += session.unackedMessages.size();
+        }
+        return count;
+    }
+
+    public int getQueuedCount() {
+        int count = 0;
+        for (PeerSession session : sessions.values()) {
+            synchronized (session) {
+                count += session.sendQueue.size();
+            }
+        }
+        return count;
+    }
+
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    public int getActiveSessionCount() {
+        return sessions.size();
+    }
+
+    public long getReapedSessionCount() {
+        return reapedSessionCount.get();
+    }
+
+    // Datagrams from unknown peers that didn't get a session: not a DATA/key-share frame, or the table was full
+    public long getRefusedSessionCount() {
+        return refusedSessionCount.get();
+    }
+
+    private void log(String message) {
+        if (verbose) {
+            System.out.println(message);
+        }
+    }
+
+    private PeerSession sessionFor(InetAddress address, int port) {
+        return sessions.computeIfAbsent(new InetSocketAddress(address, port), k -> {
+            PeerSession session = new PeerSession(address, port);
+            if (secure) {
+                session.secureSession = initiateSession();
+            }
+            return session;
+        });
+    }
+
+    private void send(byte[] data, PeerSession session) throws IOException {
+        if (session.secureSession != null) {
+            // Sealed per send, so a retransmission picks up a key agreed after the first attempt
+            try {
+                data = session.secureSession.seal(data);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Cannot seal packet: " + e.getMessage(), e);
+            }
+        }
+        DatagramPacket packet = new DatagramPacket(data, data.length, session.address, session.port);
         socket.send(packet);
+        session.lastSent = System.currentTimeMillis();
     }
 
-    private void sendAck(int seq, InetAddress address, int port) throws IOException {
+    private void sendAck(int seq, PeerSession session) throws IOException {
         String ackMessage = "ACK|" + seq;
-        send(ackMessage.getBytes(), address, port);
+        send(ackMessage.getBytes(), session);
     }
 
     public void sendReliableMessage(String messageBody, InetAddress address, int port) throws IOException {
-        int currentSeq = mySeq++;
-        String fullMessage = "DATA|" + currentSeq + "|" + messageBody;
-        byte[] data = fullMessage.getBytes();
+        if (!offerReliableMessage(messageBody, address, port)) {
+            throw new IOException("Send queue to " + address + ":" + port + " is full");
+        }
+    }
+
+    // Non-blocking send: returns false, without queueing anything, when the peer's send
+    // queue is full. The caller should back off and offer again later.
+    public boolean offerReliableMessage(String messageBody, InetAddress address, int port) throws IOException {
+        PeerSession session = sessionFor(address, port);
+        // Sent while holding the lock so packets hit the wire in sequence order
+        synchronized (session) {
+            boolean windowOpen = session.sendQueue.isEmpty()
+                    && session.unackedMessages.size() < sendWindow(session);
+            if (!windowOpen && session.sendQueue.size() >= MAX_QUEUED_MESSAGES) {
+                throttledCount.incrementAndGet();
+                return false;
+            }
+
+            // Sequence numbers are assigned in offer order, so queued packets keep their place
+            int currentSeq = session.mySeq.getAndIncrement();
+            String fullMessage = "DATA|" + currentSeq + "|" + messageBody;
+            PacketInfo info = new PacketInfo(fullMessage.getBytes(), address, port, currentSeq);
+            if (windowOpen) {
+                session.unackedMessages.put(currentSeq, info);
+                send(info.data, session);
+            } else {
+                session.sendQueue.add(info);
+            }
+            return true;
+        }
+    }
+
+    // Until the secure key is agreed only the opening 'K' frame may be in flight: the
+    // responder accepts no other cleartext, so anything more would just wait out an RTO
+    private int sendWindow(PeerSession session) {
+        if (session.secureSession != null && !session.secureSession.hasSendKey()) {
+            return 1;
+        }
+        return (int) session.congestionWindow;
+    }
+
+    // Moves queued packets into flight as far as the window allows
+    private void drainSendQueue(PeerSession session) throws IOException {
+        synchronized (session) {
+            while (!session.sendQueue.isEmpty() && session.unackedMessages.size() < sendWindow(session)) {
+                PacketInfo info = session.sendQueue.poll();
+                info.timestamp = System.currentTimeMillis();
+                session.unackedMessages.put(info.sequence, info);
+                send(info.data, session);
+            }
+        }
+    }
 
-        PacketInfo info = new PacketInfo(data, address, port, currentSeq);
-        unackedMessages.put(currentSeq, info);
+    private static SecureSession initiateSession() {
+        try {
+            return SecureSession.initiate();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Secure mode unavailable: " + e.getMessage(), e);
+        }
+    }
 
-        send(data, address, port);
+    // Finds or opens the sender's session; null means drop the datagram. Stray or spoofed
+    // packets must not open sessions, since every session gets heartbeats sent to its address.
+    private PeerSession sessionForIncoming(DatagramPacket packet) throws GeneralSecurityException {
+        SocketAddress from = packet.getSocketAddress();
+        PeerSession session = sessions.get(from);
+        if (session != null) {
+            return session;
+        }
+        if (sessions.size() >= MAX_SESSIONS) {
+            refusedSessionCount.incrementAndGet();
+            return null;
+        }
+        if (!secure) {
+            // Only data may open a plaintext session; a bare ACK from an unknown peer means nothing to us
+            if (!new String(packet.getData(), 0, Math.min(packet.getLength(), 5)).equals("DATA|")) {
+                refusedSessionCount.incrementAndGet();
+                return null;
+            }
+            return sessionFor(packet.getAddress(), packet.getPort());
+        }
+        // Only a key share may open a secure session
+        SecureSession secureSession = SecureSession.respond(packet.getData(), packet.getLength());
+        if (secureSession == null) {
+            refusedSessionCount.incrementAndGet();
+            return null;
+        }
+        session = new PeerSession(packet.getAddress(), packet.getPort());
+        session.secureSession = secureSession;
+        PeerSession existing = sessions.putIfAbsent(from, session);
+        return existing != null ? existing : session;
     }
 
     public void retransmissionLoop() {
-        while (true) {
+        while (!socket.isClosed()) {
             try {
                 long now = System.currentTimeMillis();
-                Iterator<Map.Entry<Integer, PacketInfo>> iterator = unackedMessages.entrySet().iterator();
-
-                while (iterator.hasNext()) {
-                    PacketInfo info = iterator.next().getValue();
-                    if (now - info.timestamp > RETRANSMISSION_TIMEOUT_MS) {
-                        System.out.println("[Transport] Retransmitting sequence: " + info.sequence);
-                        // Update timestamp and resend
-                        info.timestamp = now;
-                        send(info.data, info.address, info.port);
+
+                for (PeerSession session : sessions.values()) {
+                    if (now - session.lastHeard > idleTimeoutMs) {
+                        reap(session);
+                        continue;
+                    }
+
+                    int highestLost = -1;
+                    int highestInFlight = -1;
+                    for (PacketInfo info : session.unackedMessages.values()) {
+                        highestInFlight = Math.max(highestInFlight, info.sequence);
+                        if (now - info.timestamp > RETRANSMISSION_TIMEOUT_MS) {
+                            log("[Transport] Retransmitting sequence: " + info.sequence);
+                            // Update timestamp and resend
+                            info.timestamp = now;
+                            retransmitCount.incrementAndGet();
+                            highestLost = Math.max(highestLost, info.sequence);
+                            send(info.data, session);
+                        }
+                    }
+                    if (highestLost > session.recoveryPoint) {
+                        // Multiplicative decrease, once per loss episode. The receiver only delivers
+                        // in order, so one loss makes everything sent after it time out too; those
+                        // packets were already in flight at the cut and must not cut again.
+                        synchronized (session) {
+                            session.congestionWindow = Math.max(1, session.congestionWindow / 2);
+                            session.recoveryPoint = highestInFlight;
+                        }
+                    }
+
+                    // Nothing delivered from this peer yet means nothing to re-acknowledge
+                    if (session.peerSeq >= 0 && now - session.lastSent >= heartbeatIntervalMs) {
+                        // Re-acknowledging the last delivered packet is harmless and doubles as a keepalive
+                        sendAck(session.peerSeq, session);
                     }
                 }
                 Thread.sleep(RETRANSMISSION_TIMEOUT_MS / 4); // Check frequently
@@ -86,51 +374,93 @@ public class PokeTransportLayer {
         }
     }
 
+    private void reap(PeerSession session) {
+        if (!sessions.remove(new InetSocketAddress(session.address, session.port), session)) {
+            return;
+        }
+        reapedSessionCount.incrementAndGet();
+        log("[Transport] Session with " + session.address + ":" + session.port + " timed out, dropped "
+                + session.unackedMessages.size() + " unacked packets.");
+        if (handler != null) {
+            handler.onSessionExpired(session.address, session.port);
+        }
+    }
+
 // --- Listening Method ---
 
     public void listen() throws Exception {
         byte[] buffer = new byte[MAX_PACKET_SIZE];
         DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        log("[Transport] Listening on port: " + socket.getLocalPort());
 
         while (true) {
             try {
                 socket.receive(packet);
-                String rawMessage = new String(packet.getData(), 0, packet.getLength());
-                InetAddress peerIP = packet.getAddress();
-                int peerPort = packet.getPort();
+                PeerSession session = sessionForIncoming(packet);
+                String rawMessage;
+                if (session == null) {
+                    log("[Transport] Dropped packet from " + packet.getSocketAddress() + ", no session for it");
+                    continue;
+                } else if (session.secureSession != null) {
+                    boolean wasKeyed = session.secureSession.hasSendKey();
+                    byte[] frame = session.secureSession.open(packet.getData(), packet.getLength());
+                    if (frame == null) {
+                        log("[Transport] Dropped unauthenticated packet from " + packet.getSocketAddress());
+                        continue;
+                    }
+                    if (!wasKeyed) {
+                        // The key just arrived: release whatever queued up behind the opening frame
+                        drainSendQueue(session);
+                    }
+                    rawMessage = new String(frame);
+                } else {
+                    rawMessage = new String(packet.getData(), 0, packet.getLength());
+                }
+                session.lastHeard = System.currentTimeMillis();
 
-                handleIncomingMessage(rawMessage, peerIP, peerPort);
+                handleIncomingMessage(rawMessage, session);
             } catch (SocketTimeoutException ignored) {
             } catch (SocketException e) {
                 break;
             } catch (IOException e) {
                 System.err.println("[Transport] Listen error: " + e.getMessage());
+            } catch (GeneralSecurityException | RuntimeException e) {
+                // A malformed or hostile packet must not take the listen thread down
+                System.err.println("[Transport] Dropped packet: " + e);
             }
         }
     }
 
-    private void handleIncomingMessage(String rawMessage, InetAddress ip, int port) throws IOException {
+    private void handleIncomingMessage(String rawMessage, PeerSession session) throws IOException {
         String[] parts = rawMessage.split("\\|", 3);
         String type = parts[0];
-        if (handler == null) return; 
+        if (handler == null) return;
 
         if ("ACK".equals(type) && parts.length >= 2) {
             int seq = Integer.parseInt(parts[1]);
-            if (unackedMessages.remove(seq) != null) {
-                System.out.println("[Transport] ACK received for sequence: " + seq);
+            if (session.unackedMessages.remove(seq) != null) {
+                log("[Transport] ACK received for sequence: " + seq);
+                // Additive increase: about one packet per window's worth of ACKs
+                synchronized (session) {
+                    session.congestionWindow = Math.min(MAX_WINDOW, session.congestionWindow + 1.0 / session.congestionWindow);
+                }
+                drainSendQueue(session);
             }
         } else if ("DATA".equals(type) && parts.length >= 3) {
             int seq = Integer.parseInt(parts[1]);
             String messageBody = parts[2];
-            sendAck(seq, ip, port);
-            
-            if (seq > peerSeq) {
-                handler.onMessageReceived(messageBody, seq, ip, port);
-                peerSeq = seq; 
-            } else if (seq == peerSeq) {
-                 System.out.println("[Transport] Duplicate data packet received (Seq: " + seq + "). Dropped message body.");
+
+            if (seq == session.peerSeq + 1) {
+                sendAck(seq, session);
+                session.peerSeq = seq;
+                handler.onMessageReceived(messageBody, seq, session.address, session.port);
+            } else if (seq <= session.peerSeq) {
+                // Our earlier ACK was lost, acknowledge again so the peer stops resending
+                sendAck(seq, session);
+                log("[Transport] Duplicate data packet received (Seq: " + seq + "). Dropped message body.");
             } else {
-                 System.out.println("[Transport] Out-of-order data packet received (Seq: " + seq + "). Dropped message body.");
+                // Not acknowledged: the peer retransmits it once the gap before it is filled
+                log("[Transport] Out-of-order data packet received (Seq: " + seq + "). Waiting for " + (session.peerSeq + 1) + ".");
             }
         }
     }
@@ -138,7 +468,7 @@ public class PokeTransportLayer {
     public void closeSocket() {
         if (socket != null && !socket.isClosed()) {
             socket.close();
-            System.out.println("[Transport] Socket closed.");
+            log("[Transport] Socket closed.");
         }
     }
 }
@@ -0,0 +1,28 @@
+// Elemental types, resolved from their CSV names once at load time.
+// The ordinal indexes Pokemon.against, so keep this in a fixed order.
+public enum PokeType {
+    BUG, DARK, DRAGON, ELECTRIC, FAIRY, FIGHTING, FIRE, FLYING, GHOST,
+    GRASS, GROUND, ICE, NORMAL, POISON, PSYCHIC, ROCK, STEEL, WATER;
+
+    public static final int COUNT = values().length;
+
+    private final String displayName = name().toLowerCase();
+
+    // Returns null for a blank name (e.g. a missing type2); throws IllegalArgumentException
+    // for a name that isn't a type, so callers decide how to recover (see CSVLoader.parseType)
+    public static PokeType fromName(String name) {
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        String key = name.trim().toUpperCase();
+        if (key.equals("FIGHT")) {
+            return FIGHTING; // pokemon.csv spells the column against_fight
+        }
+        return valueOf(key);
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
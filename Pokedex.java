@@ -0,0 +1,234 @@
+import java.util.*;
+
+// Read-only query view over the species loaded by CSVLoader. Every index is built
+// once up front: a BitSet per type, generation and legendary flag, each stat as a
+// sorted int[] with the matching species ids, and a ranked counter list per species.
+// A query just intersects bitsets, so it costs a few hundred long operations.
+public class Pokedex {
+    public static final int COUNTERS_PER_SPECIES = 10;
+
+    public enum Stat {
+        HP, ATTACK, DEFENSE, SP_ATTACK, SP_DEFENSE, SPEED, TOTAL;
+
+        int of(Pokemon p) {
+            switch (this) {
+                case HP: return p.getMaxHp();
+                case ATTACK: return p.getAttack();
+                case DEFENSE: return p.getDefense();
+                case SP_ATTACK: return p.getSpAttack();
+                case SP_DEFENSE: return p.getSpDefense();
+                case SPEED: return p.getSpeed();
+                default: return p.getBaseTotal();
+            }
+        }
+    }
+
+    private final Pokemon[] species;
+    private final Map<String, Integer> idsByName = new HashMap<>();
+    private final BitSet all;
+    private final BitSet[] byType = new BitSet[PokeType.COUNT];
+    private final BitSet[] byGeneration;
+    private final BitSet legendary = new BitSet();
+    private final int[][] sortedStatValues = new int[Stat.values().length][];
+    private final int[][] idsByStat = new int[Stat.values().length][];
+    private final int[][] counters;
+
+    public Pokedex(Map<String, Pokemon> pokemonDB) {
+        this.species = pokemonDB.values().toArray(new Pokemon[0]);
+        int n = species.length;
+        this.all = new BitSet(n);
+        all.set(0, n);
+
+        int maxGeneration = 0;
+        for (Pokemon p : species) {
+            maxGeneration = Math.max(maxGeneration, generationOf(p));
+        }
+        this.byGeneration = new BitSet[maxGeneration + 1];
+        for (int g = 0; g <= maxGeneration; g++) {
+            byGeneration[g] = new BitSet(n);
+        }
+        for (int t = 0; t < PokeType.COUNT; t++) {
+            byType[t] = new BitSet(n);
+        }
+
+        for (int id = 0; id < n; id++) {
+            Pokemon p = species[id];
+            idsByName.put(p.getName().toUpperCase(), id);
+            if (p.getType1() != null) byType[p.getType1().ordinal()].set(id);
+            if (p.getType2() != null) byType[p.getType2().ordinal()].set(id);
+            byGeneration[generationOf(p)].set(id);
+            if (p.isLegendary) legendary.set(id);
+        }
+
+        for (Stat stat : Stat.values()) {
+            Integer[] order = new Integer[n];
+            for (int id = 0; id < n; id++) order[id] = id;
+            Arrays.sort(order, Comparator.comparingInt(id -> stat.of(species[id])));
+            int[] values = new int[n];
+            int[] ids = new int[n];
+            for (int i = 0; i < n; i++) {
+                ids[i] = order[i];
+                values[i] = stat.of(species[order[i]]);
+            }
+            sortedStatValues[stat.ordinal()] = values;
+            idsByStat[stat.ordinal()] = ids;
+        }
+
+        this.counters = new int[n][];
+        for (int id = 0; id < n; id++) {
+            counters[id] = rankCounters(id);
+        }
+    }
+
+    // A negative generation is bad data; file it with 0, the loader's "unknown"
+    private static int generationOf(Pokemon p) {
+        return Math.max(0, p.generation);
+    }
+
+    // How well candidate answers target: what its STAB types do to target, over
+    // what target's STAB types do to it. Immunities count as a strong resist, not infinity.
+    static double counterScore(Pokemon candidate, Pokemon target) {
+        double offense = Math.max(multiplier(target, candidate.getType1()), multiplier(target, candidate.getType2()));
+        double defense = Math.max(multiplier(candidate, target.getType1()), multiplier(candidate, target.getType2()));
+        return offense / Math.max(defense, 0.125);
+    }
+
+    private static double multiplier(Pokemon defender, PokeType attackType) {
+        return attackType == null ? 0 : defender.getEffectiveMultiplier(attackType);
+    }
+
+    // Keeps only the best COUNTERS_PER_SPECIES by insertion instead of sorting every species
+    private int[] rankCounters(int targetId) {
+        Pokemon target = species[targetId];
+        int[] top = new int[Math.min(COUNTERS_PER_SPECIES, species.length - 1)];
+        double[] topScores = new double[top.length];
+        int filled = 0;
+        for (int id = 0; id < species.length; id++) {
+            if (id == targetId) continue;
+            double score = counterScore(species[id], target);
+            int pos = filled;
+            while (pos > 0 && ranksAbove(score, id, topScores[pos - 1], top[pos - 1])) {
+                pos--;
+            }
+            if (pos >= top.length) continue;
+            int last = Math.min(filled, top.length - 1);
+            System.arraycopy(top, pos, top, pos + 1, last - pos);
+            System.arraycopy(topScores, pos, topScores, pos + 1, last - pos);
+            top[pos] = id;
+            topScores[pos] = score;
+            if (filled < top.length) filled++;
+        }
+        return top;
+    }
+
+    // Best matchup first, stronger species breaking ties
+    private boolean ranksAbove(double score, int id, double otherScore, int otherId) {
+        if (score != otherScore) {
+            return score > otherScore;
+        }
+        return species[id].getBaseTotal() > species[otherId].getBaseTotal();
+    }
+
+    public int size() {
+        return species.length;
+    }
+
+    public Pokemon get(String name) {
+        Integer id = idsByName.get(name.toUpperCase());
+        return id == null ? null : species[id];
+    }
+
+    // Precomputed; returns at most COUNTERS_PER_SPECIES entries, best first
+    public List<Pokemon> countersTo(String name) {
+        Integer id = idsByName.get(name.toUpperCase());
+        if (id == null) {
+            return Collections.emptyList();
+        }
+        List<Pokemon> out = new ArrayList<>(counters[id].length);
+        for (int counterId : counters[id]) {
+            out.add(species[counterId]);
+        }
+        return out;
+    }
+
+    public Query query() {
+        return new Query();
+    }
+
+    // Filters combine with AND, e.g. query().type(PokeType.FIRE).minStat(Stat.SPEED, 101).list()
+    public class Query {
+        private final BitSet matches = (BitSet) all.clone();
+
+        public Query type(PokeType type) {
+            matches.and(byType[type.ordinal()]);
+            return this;
+        }
+
+        public Query generation(int generation) {
+            if (generation < 0 || generation >= byGeneration.length) {
+                matches.clear();
+            } else {
+                matches.and(byGeneration[generation]);
+            }
+            return this;
+        }
+
+        public Query legendary(boolean isLegendary) {
+            if (isLegendary) {
+                matches.and(legendary);
+            } else {
+                matches.andNot(legendary);
+            }
+            return this;
+        }
+
+        public Query minStat(Stat stat, int min) {
+            return statBetween(stat, min, Integer.MAX_VALUE);
+        }
+
+        public Query maxStat(Stat stat, int max) {
+            return statBetween(stat, Integer.MIN_VALUE, max);
+        }
+
+        // Inclusive on both ends
+        public Query statBetween(Stat stat, int min, int max) {
+            int[] values = sortedStatValues[stat.ordinal()];
+            int[] ids = idsByStat[stat.ordinal()];
+            int from = lowerBound(values, min);
+            int to = max == Integer.MAX_VALUE ? values.length : lowerBound(values, max + 1);
+            BitSet inRange = new BitSet(species.length);
+            for (int i = from; i < to; i++) {
+                inRange.set(ids[i]);
+            }
+            matches.and(inRange);
+            return this;
+        }
+
+        public int count() {
+            return matches.cardinality();
+        }
+
+        public List<Pokemon> list() {
+            List<Pokemon> out = new ArrayList<>(matches.cardinality());
+            for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+                out.add(species[id]);
+            }
+            return out;
+        }
+    }
+
+    // First index whose value is >= key
+    private static int lowerBound(int[] values, int key) {
+        int lo = 0;
+        int hi = values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,148 @@
+import java.io.File;
+import java.util.*;
+
+// Load time and retained heap of the Pokedex built by CSVLoader, and Pokedex
+// query latency against a naive scan over the loaded map.
+public class PokedexBenchmark {
+    private static final String DEFAULT_CSV_PATH = "pokemon.csv";
+
+    private interface Bench {
+        int run();
+    }
+
+    // Average microseconds per call, after a warm-up pass
+    private static double time(Bench bench, int iterations) {
+        int sink = 0;
+        for (int i = 0; i < iterations; i++) sink += bench.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) sink += bench.run();
+        long elapsed = System.nanoTime() - start;
+        if (sink == 42) System.out.print("");
+        return elapsed / 1e3 / iterations;
+    }
+
+    private static void compare(String label, Bench indexed, Bench naive) {
+        int expected = naive.run();
+        int actual = indexed.run();
+        if (expected != actual) {
+            throw new IllegalStateException(label + ": index returned " + actual + ", scan returned " + expected);
+        }
+        double indexedUs = time(indexed, 20_000);
+        double naiveUs = time(naive, 20_000);
+        System.out.printf("%-40s => %4d | index %7.2f us | scan %8.2f us | %5.1fx%n",
+                label, actual, indexedUs, naiveUs, naiveUs / indexedUs);
+    }
+
+    private static List<Pokemon> naiveCounters(Map<String, Pokemon> pokemonDB, String name) {
+        Pokemon target = pokemonDB.get(name);
+        List<Pokemon> candidates = new ArrayList<>();
+        for (Pokemon p : pokemonDB.values()) {
+            if (p != target) candidates.add(p);
+        }
+        candidates.sort((a, b) -> {
+            int byScore = Double.compare(Pokedex.counterScore(b, target), Pokedex.counterScore(a, target));
+            return byScore != 0 ? byScore : Integer.compare(b.getBaseTotal(), a.getBaseTotal());
+        });
+        return candidates.subList(0, Pokedex.COUNTERS_PER_SPECIES);
+    }
+
+    // Order-sensitive, so a swapped pair changes it
+    private static int rankChecksum(List<Pokemon> ranked) {
+        int sum = 0;
+        for (int i = 0; i < ranked.size(); i++) {
+            sum += (i + 1) * ranked.get(i).pokedexNumber;
+        }
+        return sum % 10_000;
+    }
+
+    // The whole ranked list, for every species, must match the naive sort
+    private static void verifyCounters(Pokedex pokedex, Map<String, Pokemon> pokemonDB) {
+        for (String name : pokemonDB.keySet()) {
+            List<Pokemon> expected = naiveCounters(pokemonDB, name);
+            List<Pokemon> actual = pokedex.countersTo(name);
+            if (!expected.equals(actual)) {
+                throw new IllegalStateException("Counters to " + name + ": index returned " + actual + ", scan returned " + expected);
+            }
+        }
+        System.out.println("Counter rankings match the naive sort for all " + pokemonDB.size() + " species");
+    }
+
+    private static void benchmarkQueries(Map<String, Pokemon> pokemonDB) {
+        long buildStart = System.nanoTime();
+        Pokedex pokedex = new Pokedex(pokemonDB);
+        System.out.printf("Pokedex index build: %.1f ms%n", (System.nanoTime() - buildStart) / 1e6);
+        verifyCounters(pokedex, pokemonDB);
+
+        compare("fire types with speed > 100",
+                () -> pokedex.query().type(PokeType.FIRE).minStat(Pokedex.Stat.SPEED, 101).count(),
+                () -> {
+                    int count = 0;
+                    for (Pokemon p : pokemonDB.values()) {
+                        if ((p.getType1() == PokeType.FIRE || p.getType2() == PokeType.FIRE) && p.getSpeed() > 100) count++;
+                    }
+                    return count;
+                });
+        compare("gen 1 legendaries",
+                () -> pokedex.query().generation(1).legendary(true).count(),
+                () -> {
+                    int count = 0;
+                    for (Pokemon p : pokemonDB.values()) {
+                        if (p.generation == 1 && p.isLegendary) count++;
+                    }
+                    return count;
+                });
+        compare("non-legendary water, attack 80-120",
+                () -> pokedex.query().type(PokeType.WATER).legendary(false)
+                        .statBetween(Pokedex.Stat.ATTACK, 80, 120).list().size(),
+                () -> {
+                    List<Pokemon> out = new ArrayList<>();
+                    for (Pokemon p : pokemonDB.values()) {
+                        if ((p.getType1() == PokeType.WATER || p.getType2() == PokeType.WATER) && !p.isLegendary
+                                && p.getAttack() >= 80 && p.getAttack() <= 120) out.add(p);
+                    }
+                    return out.size();
+                });
+        compare("counters to CHARIZARD (rank checksum)",
+                () -> rankChecksum(pokedex.countersTo("CHARIZARD")),
+                () -> rankChecksum(naiveCounters(pokemonDB, "CHARIZARD")));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        File csvFile = new File(args.length > 1 ? args[1] : DEFAULT_CSV_PATH);
+
+        long coldStart = System.nanoTime();
+        Map<String, Pokemon> pokemonDB = CSVLoader.load(csvFile);
+        long coldNs = System.nanoTime() - coldStart;
+
+        long warmStart = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            pokemonDB = CSVLoader.load(csvFile);
+        }
+        long warmNs = (System.nanoTime() - warmStart) / iterations;
+
+        // Keep several Pokedexes alive so the per-copy figure rises above GC noise
+        int copies = 20;
+        List<Map<String, Pokemon>> retained = new ArrayList<>();
+        long heapBefore = BattleSimulation.usedHeap();
+        for (int i = 0; i < copies; i++) {
+            retained.add(CSVLoader.load(csvFile));
+        }
+        long heapAfter = BattleSimulation.usedHeap();
+
+        int learnsetEntries = 0;
+        Set<short[]> distinctLearnsets = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Pokemon p : pokemonDB.values()) {
+            learnsetEntries += p.moveIds.length;
+            distinctLearnsets.add(p.moveIds);
+        }
+
+        System.out.printf("Species: %d | learnset entries: %d | distinct learnset arrays: %d%n",
+                pokemonDB.size(), learnsetEntries, distinctLearnsets.size());
+        System.out.printf("Load: cold %.2f ms, warm %.2f ms (avg of %d)%n", coldNs / 1e6, warmNs / 1e6, iterations);
+        System.out.printf("Retained heap per Pokedex: %.1f KB (%d copies held: %d)%n",
+                (heapAfter - heapBefore) / 1024.0 / copies, copies, retained.size());
+
+        benchmarkQueries(pokemonDB);
+    }
+}
@@ -9,18 +9,23 @@ public class Pokemon {
     public int spAttack;
     public int spDefense;
     public int speed;
-    public String type1;
-    public String type2;
+    public PokeType type1;
+    public PokeType type2;
     public boolean isLegendary = false;
-    public Map<String, Double> against = new HashMap<>();
-    public Map<String, Move> moves = new LinkedHashMap<>(); 
+    public int generation;
+    public int pokedexNumber;
+    // Damage multiplier taken from each attacking type, indexed by PokeType ordinal
+    public double[] against = neutralAgainst();
+    // Learnset as ids into a MoveTable shared by every species
+    public MoveTable moveTable;
+    public short[] moveIds = new short[0];
     
     public String abilitiesRaw = "";
     public int spAttackBoostsRemaining = 5;
     public int spDefenseBoostsRemaining = 5;
 
     public Pokemon (String name, int hp, int attack, int defense, int spAttack, int spDefense,
-                    int speed, String type1, String type2) {
+                    int speed, PokeType type1, PokeType type2) {
         this.name = name;
         this.hp = hp;
         this.maxHp = hp; 
@@ -31,17 +36,32 @@ public class Pokemon {
         this.spDefense = spDefense;
         this.speed = speed;
         this.type1 = type1;
+        this.type2 = type2;
+    }
 
-        if (type2 == null || type2.isEmpty()){
-            this.type2 = null;
-        }
-        else {
-            this.type2 = type2;
-        }
+    private static double[] neutralAgainst() {
+        double[] multipliers = new double[PokeType.COUNT];
+        Arrays.fill(multipliers, 1.0);
+        return multipliers;
+    }
+
+    // Fresh battle instance: stats and HP are per-battle, type chart and moves are shared
+    public Pokemon copy() {
+        Pokemon p = new Pokemon(name, maxHp, attack, defense, spAttack, spDefense, speed, type1, type2);
+        p.hp = hp;
+        p.isLegendary = isLegendary;
+        p.generation = generation;
+        p.pokedexNumber = pokedexNumber;
+        p.against = against;
+        p.moveTable = moveTable;
+        p.moveIds = moveIds;
+        p.abilitiesRaw = abilitiesRaw;
+        return p;
     }
 
-    public void addMove(Move m) { 
-        moves.put(m.name.toUpperCase(), m); 
+    public void setMoves(MoveTable moveTable, short[] moveIds) {
+        this.moveTable = moveTable;
+        this.moveIds = moveIds;
     }
     public String getName() { 
         return name; 
@@ -56,18 +76,36 @@ public class Pokemon {
     public int getDefense() { return defense; }
     public int getSpAttack() { return spAttack; }
     public int getSpDefense() { return spDefense; }
-    public String getType1() { return type1; }
-    public String getType2() { return type2; }
+    public int getSpeed() { return speed; }
+    public int getMaxHp() { return maxHp; }
+    public int getBaseTotal() { return maxHp + attack + defense + spAttack + spDefense + speed; }
+    public PokeType getType1() { return type1; }
+    public PokeType getType2() { return type2; }
+    // Learnsets are a handful of moves, so a scan beats upper-casing the name for a hash lookup
     public Move getMove(String moveName) { 
-        return moves.get(moveName.toUpperCase()); 
+        for (short id : moveIds) {
+            Move m = moveTable.get(id);
+            if (m.name.equalsIgnoreCase(moveName)) {
+                return m;
+            }
+        }
+        return null;
     } 
 
+    public List<Move> getMoves() {
+        List<Move> out = new ArrayList<>(moveIds.length);
+        for (short id : moveIds) {
+            out.add(moveTable.get(id));
+        }
+        return out;
+    }
+
     public String getStatsString() {
         return String.format("%d,%d,%d,%d,%d,%d", maxHp, attack, defense, spAttack, spDefense, speed);
     }
     
-    public double getEffectiveMultiplier(String moveType) {
-        return against.getOrDefault(moveType.toLowerCase(), 1.0);
+    public double getEffectiveMultiplier(PokeType moveType) {
+        return against[moveType.ordinal()];
     }
 
     @Override
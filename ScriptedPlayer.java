@@ -0,0 +1,66 @@
+import java.net.*;
+
+// Plays one side of a battle unattended: whenever it is this side's turn it attacks
+// with a fixed move, straight from the transport's listen thread, so no polling
+// delay ends up in the numbers. A turn's latency runs from our ATTACK_ANNOUNCE to
+// the opponent's CALCULATION_CONFIRM.
+public class ScriptedPlayer implements PokeTransportLayer.MessageListener {
+
+    public interface TurnRecorder {
+        void record(long latencyNanos);
+    }
+
+    private final PokeProtocolHandler handler;
+    private final String moveName;
+    private final TurnRecorder recorder;
+    private long attackStartNanos;
+    private int recordedAttacks = 0;
+    private volatile boolean stalled = false;
+
+    public ScriptedPlayer(PokeProtocolHandler handler, String moveName, TurnRecorder recorder) {
+        this.handler = handler;
+        this.moveName = moveName;
+        this.recorder = recorder;
+    }
+
+    public PokeProtocolHandler getHandler() {
+        return handler;
+    }
+
+    public boolean isFinished() {
+        return handler.isGameOver();
+    }
+
+    // The handler refused our move, e.g. the active Pokemon doesn't know it
+    public boolean isStalled() {
+        return stalled;
+    }
+
+    @Override
+    public void onMessageReceived(String rawMessage, int seq, InetAddress ip, int port) {
+        handler.onMessageReceived(rawMessage, seq, ip, port);
+        takeTurn();
+    }
+
+    @Override
+    public void onSessionExpired(InetAddress ip, int port) {
+        handler.onSessionExpired(ip, port);
+    }
+
+    private void takeTurn() {
+        int completed = handler.getCompletedAttacks();
+        if (completed > recordedAttacks) {
+            recordedAttacks = completed;
+            if (recorder != null) {
+                recorder.record(System.nanoTime() - attackStartNanos);
+            }
+        }
+        if (handler.isReadyToAttack()) {
+            attackStartNanos = System.nanoTime();
+            handler.attack(moveName);
+            if (handler.isReadyToAttack()) {
+                stalled = true;
+            }
+        }
+    }
+}
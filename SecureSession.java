@@ -0,0 +1,195 @@
+import java.nio.ByteBuffer;
+import java.security.*;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import javax.crypto.*;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+// Per-peer crypto state for PokeTransportLayer's secure mode.
+//
+// The initiator's first frames (the HELLO and its ACKs) carry its X25519 public
+// key in clear. The responder answers with its own public key, and from then on
+// every frame is AES-GCM sealed with a direction-specific key derived from the
+// shared secret. The Cipher objects are created once per session and reused.
+//
+// The key exchange is anonymous Diffie-Hellman: neither public key is authenticated,
+// so this keeps a passive eavesdropper out and rejects forged or altered packets
+// within a session, but an active man-in-the-middle can still sit between the peers.
+//
+// Wire formats:
+//   'K' | initiator public key | plaintext frame         initiator, before it has the key
+//   'E' | responder public key | nonce | ciphertext+tag  responder, until the initiator proves the key
+//   'S' | nonce | ciphertext+tag                         everything else
+class SecureSession {
+    static final byte KEY_SHARE = 'K';
+    static final byte KEYED = 'E';
+    static final byte SEALED = 'S';
+
+    private static final int PUBLIC_KEY_LENGTH = 44; // X.509-encoded X25519 key
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+
+    private final boolean initiator;
+    private final KeyPair keyPair;
+    private final byte[] myPublicKey;
+    private byte[] peerPublicKey;
+    // Responder only: the initiator's opening 'K' frame, the one cleartext frame we accept again
+    private byte[] openingFrame;
+
+    private SecretKey sendKey;
+    private SecretKey recvKey;
+    private final Cipher sendCipher;
+    private final Cipher recvCipher;
+    private final byte[] nonce = new byte[NONCE_LENGTH];
+    private long sendCounter = 0;
+    private volatile boolean peerConfirmed = false;
+
+    private SecureSession(boolean initiator) throws GeneralSecurityException {
+        this.initiator = initiator;
+        this.keyPair = KeyPairGenerator.getInstance("X25519").generateKeyPair();
+        this.myPublicKey = keyPair.getPublic().getEncoded();
+        this.sendCipher = Cipher.getInstance("AES/GCM/NoPadding");
+        this.recvCipher = Cipher.getInstance("AES/GCM/NoPadding");
+    }
+
+    static SecureSession initiate() throws GeneralSecurityException {
+        return new SecureSession(true);
+    }
+
+    // Called with the 'K' frame that opens a session from an unknown peer
+    static SecureSession respond(byte[] frame, int length) throws GeneralSecurityException {
+        if (length < 1 + PUBLIC_KEY_LENGTH || frame[0] != KEY_SHARE) {
+            return null;
+        }
+        SecureSession session = new SecureSession(false);
+        byte[] peerKey = Arrays.copyOfRange(frame, 1, 1 + PUBLIC_KEY_LENGTH);
+        session.installKeys(peerKey, session.deriveKeys(peerKey));
+        session.openingFrame = Arrays.copyOf(frame, length);
+        return session;
+    }
+
+    // Returns {sendKey, recvKey} without touching the session, so a forged key share can't stick
+    private SecretKey[] deriveKeys(byte[] peerKey) throws GeneralSecurityException {
+        PublicKey peer = KeyFactory.getInstance("X25519").generatePublic(new X509EncodedKeySpec(peerKey));
+        KeyAgreement agreement = KeyAgreement.getInstance("X25519");
+        agreement.init(keyPair.getPrivate());
+        agreement.doPhase(peer, true);
+        byte[] shared = agreement.generateSecret();
+
+        SecretKey toResponder = new SecretKeySpec(hash(shared, "initiator->responder"), "AES");
+        SecretKey toInitiator = new SecretKeySpec(hash(shared, "responder->initiator"), "AES");
+        return initiator
+                ? new SecretKey[] {toResponder, toInitiator}
+                : new SecretKey[] {toInitiator, toResponder};
+    }
+
+    private void installKeys(byte[] peerKey, SecretKey[] keys) {
+        this.sendKey = keys[0];
+        this.recvKey = keys[1];
+        this.peerPublicKey = peerKey;
+    }
+
+    private static byte[] hash(byte[] secret, String label) throws GeneralSecurityException {
+        MessageDigest sha = MessageDigest.getInstance("SHA-256");
+        sha.update(secret);
+        sha.update(label.getBytes());
+        return sha.digest();
+    }
+
+    // False on the initiator until the responder's key share has been verified
+    synchronized boolean hasSendKey() {
+        return sendKey != null;
+    }
+
+    synchronized byte[] seal(byte[] plaintext) throws GeneralSecurityException {
+        if (sendKey == null) {
+            return concat(new byte[] {KEY_SHARE}, myPublicKey, plaintext);
+        }
+
+        byte[] header = (!initiator && !peerConfirmed)
+                ? concat(new byte[] {KEYED}, myPublicKey)
+                : new byte[] {SEALED};
+
+        // Counter nonces never repeat under one key since each direction has its own key
+        ByteBuffer.wrap(nonce).putInt(0).putLong(sendCounter++);
+        sendCipher.init(Cipher.ENCRYPT_MODE, sendKey, new GCMParameterSpec(TAG_BITS, nonce));
+        sendCipher.updateAAD(header);
+
+        byte[] out = new byte[header.length + NONCE_LENGTH + sendCipher.getOutputSize(plaintext.length)];
+        System.arraycopy(header, 0, out, 0, header.length);
+        System.arraycopy(nonce, 0, out, header.length, NONCE_LENGTH);
+        sendCipher.doFinal(plaintext, 0, plaintext.length, out, header.length + NONCE_LENGTH);
+        return out;
+    }
+
+    // Returns the plaintext frame, or null if the datagram is not authentic for this session
+    synchronized byte[] open(byte[] frame, int length) throws GeneralSecurityException {
+        if (length < 1) {
+            return null;
+        }
+        switch (frame[0]) {
+            case KEY_SHARE:
+                // Only the opening frame itself, retransmitted before the initiator had our key.
+                // Any other cleartext frame from the peer's address can only be spoofed.
+                if (initiator || peerConfirmed || !Arrays.equals(frame, 0, length, openingFrame, 0, openingFrame.length)) {
+                    return null;
+                }
+                return Arrays.copyOfRange(frame, 1 + PUBLIC_KEY_LENGTH, length);
+            case KEYED:
+                if (!initiator || length < 1 + PUBLIC_KEY_LENGTH) {
+                    return null;
+                }
+                if (recvKey != null) {
+                    if (!Arrays.equals(frame, 1, 1 + PUBLIC_KEY_LENGTH, peerPublicKey, 0, PUBLIC_KEY_LENGTH)) {
+                        return null;
+                    }
+                    return decrypt(recvKey, frame, 1 + PUBLIC_KEY_LENGTH, length);
+                }
+                // Keep the keys only once the tag proves the frame came from whoever holds them
+                byte[] peerKey = Arrays.copyOfRange(frame, 1, 1 + PUBLIC_KEY_LENGTH);
+                SecretKey[] keys = deriveKeys(peerKey);
+                byte[] plaintext = decrypt(keys[1], frame, 1 + PUBLIC_KEY_LENGTH, length);
+                if (plaintext != null) {
+                    installKeys(peerKey, keys);
+                }
+                return plaintext;
+            case SEALED:
+                if (recvKey == null) {
+                    return null;
+                }
+                return decrypt(recvKey, frame, 1, length);
+            default:
+                return null;
+        }
+    }
+
+    private byte[] decrypt(SecretKey key, byte[] frame, int headerLength, int length) throws GeneralSecurityException {
+        if (length < headerLength + NONCE_LENGTH + TAG_BITS / 8) {
+            return null;
+        }
+        recvCipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, frame, headerLength, NONCE_LENGTH));
+        recvCipher.updateAAD(frame, 0, headerLength);
+        try {
+            byte[] plaintext = recvCipher.doFinal(frame, headerLength + NONCE_LENGTH, length - headerLength - NONCE_LENGTH);
+            peerConfirmed = true;
+            return plaintext;
+        } catch (AEADBadTagException e) {
+            return null;
+        }
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int total = 0;
+        for (byte[] part : parts) {
+            total += part.length;
+        }
+        byte[] out = new byte[total];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, out, offset, part.length);
+            offset += part.length;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,75 @@
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Reliable-message throughput between two transports on loopback, with and
+// without secure mode. The sender offers as fast as the transport's window allows.
+// One message is exchanged before the clock starts, so the secure handshake is
+// not counted against the steady-state rate.
+public class SecureTransportBenchmark {
+
+    private static double run(boolean secure, int messageCount, String body) throws Exception {
+        PokeTransportLayer sender = new PokeTransportLayer(0);
+        PokeTransportLayer receiver = new PokeTransportLayer(0);
+        sender.setVerbose(false);
+        receiver.setVerbose(false);
+        if (secure) {
+            sender.enableSecureMode();
+            receiver.enableSecureMode();
+        }
+
+        AtomicLong delivered = new AtomicLong();
+        receiver.setHandler((rawMessage, seq, ip, port) -> delivered.incrementAndGet());
+        sender.setHandler((rawMessage, seq, ip, port) -> { });
+
+        List<Thread> threads = new ArrayList<>();
+        threads.addAll(BattleSimulation.startTransportThreads(sender));
+        threads.addAll(BattleSimulation.startTransportThreads(receiver));
+
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        int port = receiver.getLocalPort();
+        sender.sendReliableMessage(body, loopback, port);
+        while (delivered.get() < 1 || sender.getUnackedCount() > 0) {
+            LockSupport.parkNanos(10_000);
+        }
+        long retransmitsBefore = sender.getRetransmitCount();
+        long start = System.nanoTime();
+        for (int i = 0; i < messageCount; i++) {
+            while (!sender.offerReliableMessage(body, loopback, port)) {
+                LockSupport.parkNanos(10_000);
+            }
+        }
+        while (sender.getUnackedCount() > 0 || sender.getQueuedCount() > 0) {
+            LockSupport.parkNanos(10_000);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        sender.closeSocket();
+        receiver.closeSocket();
+        for (Thread t : threads) {
+            t.join();
+        }
+        if (delivered.get() != messageCount + 1) {
+            throw new IllegalStateException("Delivered " + (delivered.get() - 1) + " of " + messageCount);
+        }
+        System.out.printf("%-6s %d messages in %.1f ms, %d retransmits%n", secure ? "secure" : "plain",
+                messageCount, elapsed / 1e6, sender.getRetransmitCount() - retransmitsBefore);
+        return messageCount / (elapsed / 1e9);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int messageCount = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        String body = "ATTACK_ANNOUNCE|Thunderbolt|NONE";
+
+        // First pass warms up the JIT and is discarded
+        run(false, messageCount / 10, body);
+        run(true, messageCount / 10, body);
+
+        double plain = run(false, messageCount, body);
+        double secure = run(true, messageCount, body);
+        System.out.printf("Plain:  %.0f messages/sec (%.0f packets/sec with ACKs)%n", plain, plain * 2);
+        System.out.printf("Secure: %.0f messages/sec (%.0f packets/sec with ACKs), %.1f%% of plain%n",
+                secure, secure * 2, 100 * secure / plain);
+    }
+}
@@ -0,0 +1,86 @@
+import java.net.*;
+import java.util.*;
+
+// Soak test for session reaping: clients keep arriving, exchange a few messages
+// with an echoing server and then vanish without a QUIT. The server's session
+// count, unacked packets and heap should level off instead of growing.
+public class SessionChurnSoak {
+
+    public static void main(String[] args) throws Exception {
+        int durationSec = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        int clientsPerSecond = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int messagesPerClient = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        long idleTimeoutMs = args.length > 3 ? Long.parseLong(args[3]) : 2_000;
+
+        PokeTransportLayer server = new PokeTransportLayer(0);
+        server.setVerbose(false);
+        server.setIdleTimeoutMs(idleTimeoutMs);
+        server.setHeartbeatIntervalMs(idleTimeoutMs / 4);
+        // Echo everything so the vanished clients leave unacked packets behind on the server
+        server.setHandler((rawMessage, seq, ip, port) -> {
+            try {
+                server.sendReliableMessage(rawMessage, ip, port);
+            } catch (Exception e) {
+                System.err.println("Echo failed: " + e.getMessage());
+            }
+        });
+        List<Thread> serverThreads = BattleSimulation.startTransportThreads(server);
+
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        int serverPort = server.getLocalPort();
+        long clients = 0;
+        long firstHalfHeap = 0;
+        long secondHalfHeap = 0;
+        int peakSessions = 0;
+
+        System.out.printf("Churning %d clients/sec for %ds, idle timeout %d ms%n", clientsPerSecond, durationSec, idleTimeoutMs);
+        System.out.println("sec  sessions  unacked  reaped    heapKB");
+        for (int sec = 1; sec <= durationSec; sec++) {
+            long secondEnd = System.currentTimeMillis() + 1000;
+            for (int c = 0; c < clientsPerSecond; c++) {
+                PokeTransportLayer client = new PokeTransportLayer(0);
+                client.setVerbose(false);
+                for (int m = 0; m < messagesPerClient; m++) {
+                    client.sendReliableMessage("CHAT|soak " + m, loopback, serverPort);
+                }
+                client.closeSocket();
+                clients++;
+            }
+            long remaining = secondEnd - System.currentTimeMillis();
+            if (remaining > 0) {
+                Thread.sleep(remaining);
+            }
+
+            long heap = BattleSimulation.usedHeap();
+            int activeSessions = server.getActiveSessionCount();
+            peakSessions = Math.max(peakSessions, activeSessions);
+            if (sec <= durationSec / 2) {
+                firstHalfHeap += heap;
+            } else {
+                secondHalfHeap += heap;
+            }
+            System.out.printf("%3d  %8d  %7d  %6d  %8d%n", sec, activeSessions, server.getUnackedCount(),
+                    server.getReapedSessionCount(), heap / 1024);
+        }
+
+        // After the last client vanishes every session must be gone within one idle timeout plus a tick
+        Thread.sleep(idleTimeoutMs + 500);
+        int leftover = server.getActiveSessionCount();
+        // Clients whose whole burst was lost to a full receive buffer never open a session
+        System.out.printf("Clients: %d (%d reached the server) | reaped: %d | peak sessions: %d | left after drain: %d (unacked %d)%n",
+                clients, server.getReapedSessionCount() + leftover, server.getReapedSessionCount(), peakSessions,
+                leftover, server.getUnackedCount());
+        int half = Math.max(1, durationSec / 2);
+        System.out.printf("Avg heap first half: %d KB, second half: %d KB%n",
+                firstHalfHeap / half / 1024, secondHalfHeap / Math.max(1, durationSec - half) / 1024);
+
+        server.closeSocket();
+        for (Thread t : serverThreads) {
+            t.join();
+        }
+        if (leftover != 0) {
+            System.out.println("FAILED: sessions were not reaped");
+            System.exit(1);
+        }
+    }
+}
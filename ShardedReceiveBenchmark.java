@@ -0,0 +1,94 @@
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// Receive throughput of a server split into 1..N SO_REUSEPORT shards on loopback.
+// Many clients offer reliable messages as fast as their windows allow; the figure is
+// messages delivered to the server's handlers per second, summed over all shards.
+// Clients run in this JVM too, so on a machine with few cores they compete with the
+// shards' listen threads and the curve flattens early.
+public class ShardedReceiveBenchmark {
+    private static final long WARMUP_MS = 500;
+
+    private static double measure(int shardCount, int clientCount, int seconds, int[] sessionsPerShard) throws Exception {
+        List<PokeTransportLayer> shards = PokeTransportLayer.openShards(0, shardCount);
+        LongAdder delivered = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (PokeTransportLayer shard : shards) {
+            shard.setVerbose(false);
+            shard.setHandler((rawMessage, seq, ip, port) -> delivered.increment());
+            threads.addAll(BattleSimulation.startTransportThreads(shard));
+        }
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        int serverPort = shards.get(0).getLocalPort();
+
+        long end = System.currentTimeMillis() + WARMUP_MS + seconds * 1000L;
+        List<PokeTransportLayer> clients = new ArrayList<>();
+        List<Thread> senders = new ArrayList<>();
+        for (int c = 0; c < clientCount; c++) {
+            PokeTransportLayer client = new PokeTransportLayer(0);
+            client.setVerbose(false);
+            client.setHandler((rawMessage, seq, ip, port) -> { });
+            threads.addAll(BattleSimulation.startTransportThreads(client));
+            clients.add(client);
+            Thread sender = new Thread(() -> {
+                long n = 0;
+                try {
+                    while (System.currentTimeMillis() < end) {
+                        if (!client.offerReliableMessage("CHAT|load " + n++, loopback, serverPort)) {
+                            Thread.yield();
+                        }
+                    }
+                } catch (Exception e) {
+                    System.err.println("Sender error: " + e.getMessage());
+                }
+            });
+            sender.start();
+            senders.add(sender);
+        }
+
+        Thread.sleep(WARMUP_MS);
+        long startCount = delivered.sum();
+        long start = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        double perSecond = (delivered.sum() - startCount) / ((System.nanoTime() - start) / 1e9);
+
+        for (int i = 0; i < shards.size() && i < sessionsPerShard.length; i++) {
+            sessionsPerShard[i] = shards.get(i).getActiveSessionCount();
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        for (PokeTransportLayer client : clients) {
+            client.closeSocket();
+        }
+        for (PokeTransportLayer shard : shards) {
+            shard.closeSocket();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        return perSecond;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int maxShards = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(2, Runtime.getRuntime().availableProcessors());
+        int clientCount = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        System.out.printf("Cores: %d | clients: %d | %ds per run | SO_REUSEPORT %s%n",
+                Runtime.getRuntime().availableProcessors(), clientCount, seconds,
+                PokeTransportLayer.isReusePortSupported() ? "supported" : "NOT supported, every run uses 1 shard");
+        System.out.println("shards    msgs/sec   speedup  sessions per shard");
+        double baseline = 0;
+        for (int shardCount = 1; shardCount <= maxShards; shardCount++) {
+            int[] sessionsPerShard = new int[shardCount];
+            double perSecond = measure(shardCount, clientCount, seconds, sessionsPerShard);
+            if (shardCount == 1) {
+                baseline = perSecond;
+            }
+            System.out.printf("%6d  %10.0f  %7.2fx  %s%n", shardCount, perSecond, perSecond / baseline,
+                    Arrays.toString(sessionsPerShard));
+        }
+    }
+}
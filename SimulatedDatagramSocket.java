@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Drop-in DatagramSocket for PokeTransportLayer that degrades outgoing traffic
+// the way a bad network would: loss, delay, jitter, duplication and reordering.
+public class SimulatedDatagramSocket extends DatagramSocket {
+    private static final ScheduledExecutorService DELIVERY = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "simulated-network");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final double lossRate;
+    private final int delayMs;
+    private final int jitterMs;
+    private final double duplicateRate;
+    private final double reorderRate;
+    private final Random random;
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong duplicatedCount = new AtomicLong();
+    private final AtomicLong reorderedCount = new AtomicLong();
+
+    public SimulatedDatagramSocket(int port, double lossRate, int delayMs, int jitterMs,
+                                   double duplicateRate, double reorderRate, long seed) throws SocketException {
+        super(port);
+        this.lossRate = lossRate;
+        this.delayMs = delayMs;
+        this.jitterMs = jitterMs;
+        this.duplicateRate = duplicateRate;
+        this.reorderRate = reorderRate;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public void send(DatagramPacket packet) throws IOException {
+        sentCount.incrementAndGet();
+
+        double lossRoll;
+        double duplicateRoll;
+        long delay;
+        long duplicateDelay;
+        boolean reordered;
+        synchronized (random) {
+            lossRoll = random.nextDouble();
+            duplicateRoll = random.nextDouble();
+            delay = nextDelay();
+            duplicateDelay = nextDelay();
+            reordered = random.nextDouble() < reorderRate;
+        }
+
+        if (lossRoll < lossRate) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        if (reordered) {
+            // Hold this packet back long enough for the ones sent after it to overtake it
+            reorderedCount.incrementAndGet();
+            delay += delayMs + jitterMs + 1;
+        }
+
+        // The caller may reuse its packet and buffer once send() returns
+        byte[] data = Arrays.copyOfRange(packet.getData(), packet.getOffset(), packet.getOffset() + packet.getLength());
+        SocketAddress target = packet.getSocketAddress();
+
+        deliver(data, target, delay);
+        if (duplicateRoll < duplicateRate) {
+            duplicatedCount.incrementAndGet();
+            deliver(data, target, duplicateDelay);
+        }
+    }
+
+    private long nextDelay() {
+        return delayMs + (jitterMs > 0 ? random.nextInt(jitterMs + 1) : 0);
+    }
+
+    private void deliver(byte[] data, SocketAddress target, long delay) throws IOException {
+        DatagramPacket copy = new DatagramPacket(data, data.length, target);
+        if (delay <= 0) {
+            super.send(copy);
+            return;
+        }
+        DELIVERY.schedule(() -> {
+            try {
+                if (!isClosed()) {
+                    SimulatedDatagramSocket.super.send(copy);
+                }
+            } catch (IOException ignored) {
+                // A packet lost after the socket closed is just another lost packet
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    public long getSentCount() { return sentCount.get(); }
+    public long getDroppedCount() { return droppedCount.get(); }
+    public long getDuplicatedCount() { return duplicatedCount.get(); }
+    public long getReorderedCount() { return reorderedCount.get(); }
+}
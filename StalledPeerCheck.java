@@ -0,0 +1,56 @@
+import java.net.*;
+import java.util.*;
+
+// Offers messages as fast as possible to a loopback peer that receives but never
+// ACKs (its outgoing traffic is dropped by SimulatedDatagramSocket). The congestion
+// window and bounded send queue should keep in-flight packets, queued packets and
+// heap flat while the offers are throttled.
+public class StalledPeerCheck {
+
+    public static void main(String[] args) throws Exception {
+        int durationSec = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+
+        PokeTransportLayer sender = new PokeTransportLayer(0);
+        sender.setVerbose(false);
+        // Keep the session around; this checks the window, not the reaper
+        sender.setIdleTimeoutMs(Long.MAX_VALUE / 2);
+        sender.setHandler((rawMessage, seq, ip, port) -> { });
+
+        PokeTransportLayer receiver = new PokeTransportLayer(new SimulatedDatagramSocket(0, 1.0, 0, 0, 0, 0, 1));
+        receiver.setVerbose(false);
+        receiver.setHandler((rawMessage, seq, ip, port) -> { });
+
+        List<Thread> threads = new ArrayList<>();
+        threads.addAll(BattleSimulation.startTransportThreads(sender));
+        threads.addAll(BattleSimulation.startTransportThreads(receiver));
+
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        int port = receiver.getLocalPort();
+        long offered = 0;
+        long accepted = 0;
+
+        System.out.println("sec     offered   accepted  in-flight  queued    heapKB");
+        for (int sec = 1; sec <= durationSec; sec++) {
+            long secondEnd = System.currentTimeMillis() + 1000;
+            while (System.currentTimeMillis() < secondEnd) {
+                offered++;
+                if (sender.offerReliableMessage("CHAT|flood " + offered, loopback, port)) {
+                    accepted++;
+                } else {
+                    Thread.yield();
+                }
+            }
+            System.out.printf("%3d  %10d  %9d  %9d  %6d  %8d%n", sec, offered, accepted,
+                    sender.getUnackedCount(), sender.getQueuedCount(), BattleSimulation.usedHeap() / 1024);
+        }
+
+        System.out.printf("Throttled offers: %d of %d, retransmits: %d%n",
+                sender.getThrottledCount(), offered, sender.getRetransmitCount());
+
+        sender.closeSocket();
+        receiver.closeSocket();
+        for (Thread t : threads) {
+            t.join();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+import java.util.*;
+
+// A side's party in battle order. Members are per-battle copies kept in a plain
+// array; which one is out is just an index, so switching never copies stats.
+public class Team {
+    public static final int MAX_SIZE = 6;
+
+    private final Pokemon[] members;
+    private int active = 0;
+
+    public Team(Pokemon[] members) {
+        if (members.length == 0 || members.length > MAX_SIZE) {
+            throw new IllegalArgumentException("Team must have 1 to " + MAX_SIZE + " Pokemon, got " + members.length);
+        }
+        this.members = members;
+    }
+
+    // names is the comma-separated list used on the command line and in HELLO/BATTLE_SETUP
+    public static Team fromNames(Map<String, Pokemon> pokemonDB, String names) {
+        String[] parts = names.split(",");
+        Pokemon[] members = new Pokemon[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            String name = parts[i].trim().toUpperCase();
+            Pokemon species = pokemonDB.get(name);
+            if (species == null) {
+                throw new RuntimeException("Pokemon not found!: " + name);
+            }
+            members[i] = species.copy();
+        }
+        return new Team(members);
+    }
+
+    public Pokemon getActive() {
+        return members[active];
+    }
+
+    public int getActiveIndex() {
+        return active;
+    }
+
+    public Pokemon get(int index) {
+        return members[index];
+    }
+
+    public int size() {
+        return members.length;
+    }
+
+    public int remaining() {
+        int count = 0;
+        for (Pokemon p : members) {
+            if (p.getHp() > 0) count++;
+        }
+        return count;
+    }
+
+    public boolean canSwitchTo(int index) {
+        return index >= 0 && index < members.length && index != active && members[index].getHp() > 0;
+    }
+
+    public boolean switchTo(int index) {
+        if (!canSwitchTo(index)) {
+            return false;
+        }
+        active = index;
+        return true;
+    }
+
+    // Both peers call this when the active member faints, so they agree on who comes out next
+    public boolean advanceToNextAlive() {
+        for (int i = 1; i < members.length; i++) {
+            int next = (active + i) % members.length;
+            if (members[next].getHp() > 0) {
+                active = next;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isDefeated() {
+        for (Pokemon p : members) {
+            if (p.getHp() > 0) return false;
+        }
+        return true;
+    }
+
+    public String getNames() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < members.length; i++) {
+            if (i > 0) sb.append(",");
+            sb.append(members[i].getName().toUpperCase());
+        }
+        return sb.toString();
+    }
+
+    public String getStatsString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < members.length; i++) {
+            if (i > 0) sb.append(";");
+            sb.append(members[i].getStatsString());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,157 @@
+import java.io.File;
+import java.net.*;
+import java.util.*;
+
+// Holds many team battles open at once and measures per-session heap and the
+// protocol cost of a turn. Messages are handed straight to the peer handler, so
+// the numbers cover PokeProtocolHandler and Team only, not sockets or retransmits.
+// Every Nth turn of a battle the side to move switches instead of attacking, when its
+// team has a member it can switch to; switch turns are reported apart from attacks.
+public class TeamBattleBenchmark {
+    private static final String DEFAULT_CSV_PATH = "pokemon.csv";
+    private static final String DEFAULT_TEAM = "SNORLAX,PIKACHU,ONIX,MEW,EEVEE,LAPRAS";
+
+    private static final ArrayDeque<Runnable> inbox = new ArrayDeque<>();
+    private static long messages;
+    private static long messageBytes;
+
+    // Transport stand-in that queues every reliable message for the peer handler
+    private static class DirectLink extends PokeTransportLayer {
+        PokeProtocolHandler peer;
+
+        DirectLink(DatagramSocket unboundSocket) throws SocketException {
+            super(unboundSocket);
+            setVerbose(false);
+        }
+
+        @Override
+        public void sendReliableMessage(String messageBody, InetAddress address, int port) {
+            messages++;
+            messageBytes += messageBody.length();
+            PokeProtocolHandler target = peer;
+            inbox.add(() -> target.onMessageReceived(messageBody, 0, address, port));
+        }
+    }
+
+    // The first member after the active one that the team allows switching to, or -1
+    private static int nextSwitchTarget(Team team) {
+        for (int step = 1; step < team.size(); step++) {
+            int index = (team.getActiveIndex() + step) % team.size();
+            if (team.canSwitchTo(index)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static void drain() {
+        Runnable next;
+        while ((next = inbox.poll()) != null) {
+            next.run();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        String team = args.length > 1 ? args[1].toUpperCase() : DEFAULT_TEAM;
+        String moveName = args.length > 2 ? args[2] : "Tackle";
+        String csvFilePath = args.length > 3 ? args[3] : DEFAULT_CSV_PATH;
+        // 0 never switches
+        int switchEvery = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+
+        Map<String, Pokemon> pokemonDB = CSVLoader.load(new File(csvFilePath));
+        DatagramSocket unboundSocket = new DatagramSocket(null);
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+
+        long heapBefore = BattleSimulation.usedHeap();
+
+        PokeProtocolHandler[] servers = new PokeProtocolHandler[sessions];
+        PokeProtocolHandler[] clients = new PokeProtocolHandler[sessions];
+        for (int i = 0; i < sessions; i++) {
+            DirectLink serverLink = new DirectLink(unboundSocket);
+            DirectLink clientLink = new DirectLink(unboundSocket);
+            servers[i] = new PokeProtocolHandler(serverLink, pokemonDB, true);
+            clients[i] = new PokeProtocolHandler(clientLink, pokemonDB, false);
+            servers[i].setVerbose(false);
+            clients[i].setVerbose(false);
+            serverLink.peer = clients[i];
+            clientLink.peer = servers[i];
+
+            clients[i].setPeerAddress(loopback.getHostAddress(), 5000);
+            clients[i].startHandshake(team);
+            drain();
+        }
+
+        long heapAfter = BattleSimulation.usedHeap();
+        long setupMessages = messages;
+        long setupBytes = messageBytes;
+        messages = 0;
+        messageBytes = 0;
+
+        // Round-robin one turn per live battle until every battle is over
+        int[] battleTurns = new int[sessions];
+        long turns = 0;
+        long switchTurns = 0;
+        long switchNs = 0;
+        long switchMessages = 0;
+        long switchBytes = 0;
+        long start = System.nanoTime();
+        boolean anyLive = true;
+        while (anyLive) {
+            anyLive = false;
+            for (int i = 0; i < sessions; i++) {
+                if (servers[i].isGameOver() && clients[i].isGameOver()) {
+                    continue;
+                }
+                anyLive = true;
+                PokeProtocolHandler mover;
+                if (servers[i].isReadyToAttack()) {
+                    mover = servers[i];
+                } else if (clients[i].isReadyToAttack()) {
+                    mover = clients[i];
+                } else {
+                    throw new IllegalStateException("Battle " + i + " is stuck with no side ready to attack");
+                }
+                int switchIndex = switchEvery > 0 && ++battleTurns[i] % switchEvery == 0
+                        ? nextSwitchTarget(mover.getMyTeam()) : -1;
+                if (switchIndex >= 0) {
+                    long messagesBefore = messages;
+                    long bytesBefore = messageBytes;
+                    long turnStart = System.nanoTime();
+                    mover.switchPokemon(switchIndex);
+                    drain();
+                    switchNs += System.nanoTime() - turnStart;
+                    switchMessages += messages - messagesBefore;
+                    switchBytes += messageBytes - bytesBefore;
+                    switchTurns++;
+                } else {
+                    mover.attack(moveName);
+                    drain();
+                }
+                turns++;
+            }
+        }
+        long elapsedNs = System.nanoTime() - start;
+        long attackTurns = turns - switchTurns;
+
+        double bytesPerSession = (double) (heapAfter - heapBefore) / sessions;
+        System.out.printf("Team battles: %d concurrent, team of %d (%s)%n", sessions, team.split(",").length, team);
+        System.out.printf("Heap per battle (both sides): %.0f bytes, %.0f bytes per side%n", bytesPerSession, bytesPerSession / 2);
+        System.out.printf("Setup: %.1f messages, %.0f bytes per battle%n",
+                (double) setupMessages / sessions, (double) setupBytes / sessions);
+        System.out.printf("Turns: %d in %.1f ms | %.2f us/turn | %.0f turns/sec | %.1f messages, %.0f bytes per turn%n",
+                turns, elapsedNs / 1e6, elapsedNs / 1e3 / turns, turns / (elapsedNs / 1e9),
+                (double) messages / turns, (double) messageBytes / turns);
+        // Attack turns are what is left of the loop once switch turns are taken out,
+        // so their time also carries the loop's own bookkeeping
+        System.out.printf("  Attack turns: %d | %.2f us/turn | %.1f messages, %.0f bytes per turn%n",
+                attackTurns, (elapsedNs - switchNs) / 1e3 / Math.max(1, attackTurns),
+                (double) (messages - switchMessages) / Math.max(1, attackTurns),
+                (double) (messageBytes - switchBytes) / Math.max(1, attackTurns));
+        System.out.printf("  Switch turns: %d | %.2f us/turn | %.1f messages, %.0f bytes per turn%n",
+                switchTurns, switchNs / 1e3 / Math.max(1, switchTurns),
+                (double) switchMessages / Math.max(1, switchTurns), (double) switchBytes / Math.max(1, switchTurns));
+
+        unboundSocket.close();
+    }
+}